@@ -0,0 +1,101 @@
+package com.meetme.android.multistateview.benchmark;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.meetme.android.multistateview.MultiStateView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Cost of adding the content view through each of the {@link MultiStateView} addView overloads
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AddViewBenchmark {
+    private BenchmarkHost mHost;
+
+    private MultiStateView[] mViews;
+
+    private View[] mChildren;
+
+    @Before
+    public void setUp() {
+        mHost = new BenchmarkHost();
+    }
+
+    @Test
+    public void addView() {
+        run("addView(View)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                mViews[i].addView(mChildren[i]);
+            }
+        });
+    }
+
+    @Test
+    public void addViewWithIndex() {
+        run("addView(View, int)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                mViews[i].addView(mChildren[i], 0);
+            }
+        });
+    }
+
+    @Test
+    public void addViewWithIndexAndParams() {
+        run("addView(View, int, LayoutParams)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                mViews[i].addView(mChildren[i], 0, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            }
+        });
+    }
+
+    @Test
+    public void addViewWithSize() {
+        run("addView(View, int, int)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                mViews[i].addView(mChildren[i], ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+            }
+        });
+    }
+
+    @Test
+    public void addViewWithParams() {
+        run("addView(View, LayoutParams)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                mViews[i].addView(mChildren[i], new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            }
+        });
+    }
+
+    /**
+     * Runs the given op against fresh views and children for every operation, so that only the addView call itself is timed
+     */
+    private void run(String name, Bench.Op op) {
+        final int ops = 200;
+
+        Bench.run(name, ops, new Runnable() {
+            @Override
+            public void run() {
+                mViews = new MultiStateView[ops];
+                mChildren = new View[ops];
+
+                for (int i = 0; i < ops; i++) {
+                    mViews[i] = new MultiStateView(mHost.getContext());
+                    mChildren[i] = new View(mHost.getContext());
+                }
+            }
+        }, op);
+    }
+}
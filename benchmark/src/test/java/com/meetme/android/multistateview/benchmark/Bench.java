@@ -0,0 +1,111 @@
+package com.meetme.android.multistateview.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A minimal JMH-style harness: runs warmup iterations, then timed measurement iterations of a fixed number of operations each, and reports the
+ * average time per operation. JMH itself can't be used here since it forks its own JVMs, outside of Robolectric's sandbox.
+ */
+public final class Bench {
+    private static final int WARMUP_ITERATIONS = 5;
+
+    private static final int MEASUREMENT_ITERATIONS = 10;
+
+    private static final int DEFAULT_OPS_PER_ITERATION = 500;
+
+    /**
+     * Results are written here so the JIT can't eliminate the work that produced them
+     */
+    public static volatile Object sink;
+
+    public interface Op {
+        /**
+         * @param i the index of this operation within its iteration
+         */
+        void run(int i);
+    }
+
+    private Bench() {
+    }
+
+    public static Result run(String name, Op op) {
+        return run(name, DEFAULT_OPS_PER_ITERATION, op);
+    }
+
+    public static Result run(String name, int opsPerIteration, Op op) {
+        return run(name, opsPerIteration, null, op);
+    }
+
+    /**
+     * @param setUp run (untimed) before every iteration, or null
+     */
+    public static Result run(String name, int opsPerIteration, Runnable setUp, Op op) {
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            runIteration(setUp, op, opsPerIteration);
+        }
+
+        double[] nanosPerOp = new double[MEASUREMENT_ITERATIONS];
+
+        for (int iteration = 0; iteration < MEASUREMENT_ITERATIONS; iteration++) {
+            nanosPerOp[iteration] = runIteration(setUp, op, opsPerIteration) / (double) opsPerIteration;
+        }
+
+        Result result = new Result(name, nanosPerOp);
+        System.out.println(result);
+        return result;
+    }
+
+    private static long runIteration(Runnable setUp, Op op, int ops) {
+        if (setUp != null) {
+            setUp.run();
+        }
+
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < ops; i++) {
+            op.run(i);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    public static final class Result {
+        public final String name;
+
+        public final double mean;
+
+        public final double error;
+
+        public final double min;
+
+        Result(String name, double[] samples) {
+            this.name = name;
+
+            double sum = 0;
+
+            for (double sample : samples) {
+                sum += sample;
+            }
+
+            mean = sum / samples.length;
+
+            double variance = 0;
+
+            for (double sample : samples) {
+                variance += (sample - mean) * (sample - mean);
+            }
+
+            error = Math.sqrt(variance / samples.length);
+
+            double[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            min = sorted[0];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-55s %12.1f ± %10.1f ns/op  (min %.1f)", name, mean, error, min);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.meetme.android.multistateview.benchmark;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.meetme.android.multistateview.MultiStateView;
+
+import org.robolectric.Robolectric;
+
+/**
+ * Creates MultiStateViews attached to a Robolectric-hosted activity window
+ */
+final class BenchmarkHost {
+    /**
+     * Needed for hierarchy state to be saved
+     */
+    static final int VIEW_ID = 1;
+
+    static final int CUSTOM_STATE = MultiStateView.MIN_CONTENT_STATE_ID;
+
+    static final int[] BUILT_IN_STATES = {
+            MultiStateView.CONTENT_STATE_ID_CONTENT,
+            MultiStateView.CONTENT_STATE_ID_LOADING,
+            MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK,
+            MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL,
+    };
+
+    static final int[] ALL_STATES = {
+            MultiStateView.CONTENT_STATE_ID_CONTENT,
+            MultiStateView.CONTENT_STATE_ID_LOADING,
+            MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK,
+            MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL,
+            CUSTOM_STATE,
+    };
+
+    private final Activity mActivity;
+
+    private final ViewGroup mRoot;
+
+    BenchmarkHost() {
+        mActivity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+        mRoot = new FrameLayout(mActivity);
+        mActivity.setContentView(mRoot);
+    }
+
+    Context getContext() {
+        return mActivity;
+    }
+
+    /**
+     * @return a new MultiStateView with a content child and a custom state registered, not yet attached
+     */
+    MultiStateView newView() {
+        MultiStateView view = new MultiStateView(mActivity);
+        view.setId(VIEW_ID);
+        view.addView(new TextView(mActivity));
+        view.registerStateViewProvider(CUSTOM_STATE, new MultiStateView.StateViewProvider<TextView>() {
+            @Override
+            public TextView onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+                return new TextView(context);
+            }
+
+            @Override
+            public void onBeforeViewShown(int stateViewId, TextView view) {
+                view.setText("Custom");
+            }
+        });
+
+        return view;
+    }
+
+    /**
+     * @return a new MultiStateView (see {@link #newView()}), attached to the window
+     */
+    MultiStateView newAttachedView() {
+        MultiStateView view = newView();
+        attach(view);
+        return view;
+    }
+
+    void attach(View view) {
+        mRoot.removeAllViews();
+        mRoot.addView(view);
+    }
+
+    /**
+     * Runs the show/hide messages posted by state changes
+     */
+    static void flush() {
+        Robolectric.flushForegroundThreadScheduler();
+    }
+}
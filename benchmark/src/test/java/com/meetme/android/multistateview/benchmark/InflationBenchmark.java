@@ -0,0 +1,63 @@
+package com.meetme.android.multistateview.benchmark;
+
+import com.meetme.android.multistateview.MultiStateView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Cost of constructing a MultiStateView and of creating each built-in state view
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class InflationBenchmark {
+    private BenchmarkHost mHost;
+
+    @Before
+    public void setUp() {
+        mHost = new BenchmarkHost();
+    }
+
+    @Test
+    public void construct() {
+        Bench.run("new MultiStateView", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                Bench.sink = new MultiStateView(mHost.getContext());
+            }
+        });
+    }
+
+    @Test
+    public void inflateLoadingView() {
+        Bench.run("getLoadingView (inflate)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                Bench.sink = new MultiStateView(mHost.getContext()).getLoadingView();
+            }
+        });
+    }
+
+    @Test
+    public void inflateNetworkErrorView() {
+        Bench.run("getNetworkErrorView (inflate)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                Bench.sink = new MultiStateView(mHost.getContext()).getNetworkErrorView();
+            }
+        });
+    }
+
+    @Test
+    public void inflateGeneralErrorView() {
+        Bench.run("getGeneralErrorView (inflate)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                Bench.sink = new MultiStateView(mHost.getContext()).getGeneralErrorView();
+            }
+        });
+    }
+}
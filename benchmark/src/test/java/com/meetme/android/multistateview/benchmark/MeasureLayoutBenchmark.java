@@ -0,0 +1,98 @@
+package com.meetme.android.multistateview.benchmark;
+
+import android.view.View;
+import android.view.ViewParent;
+
+import com.meetme.android.multistateview.MultiStateView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Cost of a forced measure and layout pass while state views are attached
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MeasureLayoutBenchmark {
+    private static final int WIDTH = View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY);
+
+    private static final int HEIGHT = View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.AT_MOST);
+
+    private BenchmarkHost mHost;
+
+    @Before
+    public void setUp() {
+        mHost = new BenchmarkHost();
+    }
+
+    @Test
+    public void measureAndLayoutWithAllStatesAttached() {
+        for (final int state : BenchmarkHost.ALL_STATES) {
+            final MultiStateView view = mHost.newAttachedView();
+
+            // Create (and attach) every state view, then settle on the one being measured
+            for (int other : BenchmarkHost.ALL_STATES) {
+                view.setContentState(other);
+                BenchmarkHost.flush();
+            }
+
+            view.setContentState(state);
+            BenchmarkHost.flush();
+
+            Bench.run("measure + layout (showing " + state + ", " + view.getChildCount() + " children)", new Bench.Op() {
+                @Override
+                public void run(int i) {
+                    view.forceLayout();
+                    view.measure(WIDTH, HEIGHT);
+                    view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+                }
+            });
+        }
+    }
+
+    @Test
+    public void measureAndLayoutDetachModeVersusVisibilityMode() {
+        for (final boolean detach : new boolean[] {false, true}) {
+            final MultiStateView view = mHost.newAttachedView();
+            view.setDetachInactiveStates(detach);
+
+            // Visit every state, so that in visibility mode all of their views stay attached (GONE) while the content is shown
+            for (int state : BenchmarkHost.ALL_STATES) {
+                view.setContentState(state);
+                BenchmarkHost.flush();
+            }
+
+            view.setContentState(MultiStateView.CONTENT_STATE_ID_CONTENT);
+            BenchmarkHost.flush();
+
+            final String mode = detach ? "detach mode" : "visibility mode";
+
+            Bench.run("measure + layout, " + mode + " (" + view.getChildCount() + " children)", new Bench.Op() {
+                @Override
+                public void run(int i) {
+                    view.forceLayout();
+                    view.measure(WIDTH, HEIGHT);
+                    view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+                }
+            });
+
+            Bench.run("full traversal from the root, " + mode, new Bench.Op() {
+                @Override
+                public void run(int i) {
+                    // Like requestLayout(), but without scheduling a traversal: this view and every ancestor are measured again
+                    view.forceLayout();
+
+                    for (ViewParent parent = view.getParent(); parent instanceof View; parent = parent.getParent()) {
+                        ((View) parent).forceLayout();
+                    }
+
+                    view.getRootView().measure(WIDTH, HEIGHT);
+                    view.getRootView().layout(0, 0, view.getRootView().getMeasuredWidth(), view.getRootView().getMeasuredHeight());
+                }
+            });
+        }
+    }
+}
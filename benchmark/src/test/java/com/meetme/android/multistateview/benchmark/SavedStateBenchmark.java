@@ -0,0 +1,72 @@
+package com.meetme.android.multistateview.benchmark;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseArray;
+
+import com.meetme.android.multistateview.MultiStateView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Cost of saving and restoring a MultiStateView's instance state, including a trip through a {@link Parcel}
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SavedStateBenchmark {
+    private BenchmarkHost mHost;
+
+    @Before
+    public void setUp() {
+        mHost = new BenchmarkHost();
+    }
+
+    @Test
+    public void saveAndRestore() {
+        final MultiStateView source = mHost.newAttachedView();
+        source.setContentState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        BenchmarkHost.flush();
+
+        final MultiStateView target = mHost.newView();
+
+        Bench.run("onSaveInstanceState + onRestoreInstanceState", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                SparseArray<Parcelable> container = new SparseArray<Parcelable>();
+                source.saveHierarchyState(container);
+                target.restoreHierarchyState(container);
+            }
+        });
+    }
+
+    @Test
+    public void parcelRoundTrip() {
+        final MultiStateView source = mHost.newAttachedView();
+        source.setContentState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        BenchmarkHost.flush();
+
+        final SparseArray<Parcelable> container = new SparseArray<Parcelable>();
+        source.saveHierarchyState(container);
+        final Parcelable state = container.get(BenchmarkHost.VIEW_ID);
+
+        Bench.run("SavedState parcel round trip", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                Parcel parcel = Parcel.obtain();
+                parcel.writeParcelable(state, 0);
+                parcel.setDataPosition(0);
+                Bench.sink = parcel.readParcelable(MultiStateView.SavedState.class.getClassLoader());
+                parcel.recycle();
+            }
+        });
+
+        Parcel parcel = Parcel.obtain();
+        parcel.writeParcelable(state, 0);
+        System.out.println("SavedState parcel size: " + parcel.dataSize() + " bytes");
+        parcel.recycle();
+    }
+}
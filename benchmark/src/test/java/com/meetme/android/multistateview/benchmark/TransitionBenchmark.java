@@ -0,0 +1,82 @@
+package com.meetme.android.multistateview.benchmark;
+
+import com.meetme.android.multistateview.MultiStateView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Cost of {@link MultiStateView#setContentState(int)}, with and without the state views already created
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TransitionBenchmark {
+    private BenchmarkHost mHost;
+
+    @Before
+    public void setUp() {
+        mHost = new BenchmarkHost();
+    }
+
+    @Test
+    public void warmTransitionsBetweenBuiltInStates() {
+        final MultiStateView view = warmView();
+
+        Bench.run("setContentState warm (built-in states)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                view.setContentState(BenchmarkHost.BUILT_IN_STATES[i % BenchmarkHost.BUILT_IN_STATES.length]);
+                BenchmarkHost.flush();
+            }
+        });
+    }
+
+    @Test
+    public void warmTransitionsIncludingCustomState() {
+        final MultiStateView view = warmView();
+
+        Bench.run("setContentState warm (built-in + custom states)", new Bench.Op() {
+            @Override
+            public void run(int i) {
+                view.setContentState(BenchmarkHost.ALL_STATES[i % BenchmarkHost.ALL_STATES.length]);
+                BenchmarkHost.flush();
+            }
+        });
+    }
+
+    @Test
+    public void coldTransitions() {
+        for (final int state : BenchmarkHost.ALL_STATES) {
+            if (state == MultiStateView.CONTENT_STATE_ID_CONTENT) {
+                continue;
+            }
+
+            Bench.run("setContentState cold (content -> " + state + ")", 100, new Bench.Op() {
+                @Override
+                public void run(int i) {
+                    MultiStateView view = mHost.newAttachedView();
+                    view.setContentState(state);
+                    BenchmarkHost.flush();
+                    Bench.sink = view;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return an attached view that has already shown every state once
+     */
+    private MultiStateView warmView() {
+        MultiStateView view = mHost.newAttachedView();
+
+        for (int state : BenchmarkHost.ALL_STATES) {
+            view.setContentState(state);
+            BenchmarkHost.flush();
+        }
+
+        return view;
+    }
+}
@@ -0,0 +1,85 @@
+package com.meetme.android.multistateview.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of state requests in the state machine alone, with a target that displays every applied state right away
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StateMachineBenchmark {
+    /**
+     * How state changes are configured to be applied
+     */
+    @Param({"immediate", "delayed", "coalesced"})
+    public String mode;
+
+    private VirtualScheduler mScheduler;
+
+    private StateMachine mMachine;
+
+    private int mCounter;
+
+    @Setup
+    public void setUp() {
+        mScheduler = new VirtualScheduler();
+        mMachine = new StateMachine(new StateMachine.Target() {
+            @Override
+            public void onApplyState(int state, boolean immediate) {
+                mMachine.onStateDisplayed(state);
+            }
+
+            @Override
+            public void onApplyDeferred(int state) {
+            }
+        }, mScheduler);
+
+        if ("delayed".equals(mode)) {
+            mMachine.setLoadingShowDelay(500);
+            mMachine.setLoadingMinShowTime(500);
+        } else if ("coalesced".equals(mode)) {
+            mMachine.setCoalesceStateChanges(true);
+        }
+
+        mMachine.onAttached();
+    }
+
+    /**
+     * Alternates between loading and content, letting a frame pass every few requests
+     */
+    @Benchmark
+    public void toggleLoading(Blackhole blackhole) {
+        final int i = mCounter++;
+
+        blackhole.consume(mMachine.setState(i & 1));
+
+        if ((i & 7) == 7) {
+            mScheduler.advance(VirtualScheduler.FRAME_MILLIS);
+        }
+    }
+
+    /**
+     * Requests the state that's already requested, which should be nearly free
+     */
+    @Benchmark
+    public boolean repeatState() {
+        return mMachine.setState(StateMachine.STATE_CONTENT);
+    }
+}
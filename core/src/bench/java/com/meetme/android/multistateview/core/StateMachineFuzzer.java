@@ -0,0 +1,225 @@
+package com.meetme.android.multistateview.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Drives a {@link StateMachine} through random sequences of state requests, clock advances and attaches on a {@link VirtualScheduler}, with a
+ * target that sometimes takes a while to display a state (like asynchronous inflation does), and checks that:
+ * <ul>
+ * <li>every applied state is the one requested at the time;</li>
+ * <li>the displayed state always ends up being the requested one;</li>
+ * <li>loading is never applied before it has been requested for the show delay, unless it was already displayed;</li>
+ * <li>loading is never replaced before it has been displayed for the minimum show time; and</li>
+ * <li>an explicit request made before attaching is never overridden by the initial state.</li>
+ * </ul>
+ * Usage: {@code StateMachineFuzzer [iterations [seed]]}. A failure prints the seed and the operations that led to it, and exits with status 1.
+ */
+public final class StateMachineFuzzer {
+    private static final int STATE_COUNT = 6;
+
+    private static final int MAX_OPERATIONS = 200;
+
+    private final Random mRandom;
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+
+    private final List<String> mLog = new ArrayList<String>();
+
+    private final StateMachine mMachine;
+
+    private final long mShowDelay;
+
+    private final long mMinShowTime;
+
+    /**
+     * When loading was last requested, and whether it was displayed at the time
+     */
+    private long mLoadingRequestedAt;
+
+    private boolean mLoadingRequestedWhileDisplayed;
+
+    private long mLoadingDisplayedAt = -1;
+
+    private int mTargetDisplayedState = StateMachine.STATE_CONTENT;
+
+    /**
+     * A display in progress, as with asynchronous inflation
+     */
+    private Runnable mPendingDisplay;
+
+    private StateMachineFuzzer(long seed) {
+        mRandom = new Random(seed);
+        mShowDelay = mRandom.nextBoolean() ? 0 : mRandom.nextInt(1000);
+        mMinShowTime = mRandom.nextBoolean() ? 0 : mRandom.nextInt(1000);
+
+        mMachine = new StateMachine(new StateMachine.Target() {
+            @Override
+            public void onApplyState(int state, boolean immediate) {
+                onApply(state, immediate);
+            }
+
+            @Override
+            public void onApplyDeferred(int state) {
+                log("deferred " + state);
+                cancelPendingDisplay();
+            }
+        }, mScheduler);
+
+        mMachine.setLoadingShowDelay(mShowDelay);
+        mMachine.setLoadingMinShowTime(mMinShowTime);
+        mMachine.setCoalesceStateChanges(mRandom.nextBoolean());
+        log("showDelay=" + mShowDelay + " minShowTime=" + mMinShowTime + " coalesce=" + mMachine.isCoalesceStateChanges());
+    }
+
+    private void run() {
+        final int initialState = mRandom.nextInt(STATE_COUNT);
+        final int attachAt = mRandom.nextInt(MAX_OPERATIONS);
+        final int operations = 1 + mRandom.nextInt(MAX_OPERATIONS);
+        int explicitState = StateMachine.NO_STATE;
+
+        mMachine.setInitialState(initialState);
+        log("initial " + initialState);
+
+        for (int i = 0; i < operations; i++) {
+            if (i == attachAt) {
+                log("attach");
+                mMachine.onAttached();
+                check(explicitState == StateMachine.NO_STATE || mMachine.getState() == explicitState, "initial state overrode an explicit request");
+                explicitState = StateMachine.NO_STATE;
+            }
+
+            switch (mRandom.nextInt(3)) {
+                case 0:
+                case 1:
+                    final int state = nextState();
+                    log("request " + state);
+                    onRequest(state);
+
+                    if (i < attachAt) {
+                        explicitState = state;
+                    }
+                    break;
+
+                default:
+                    final long millis = mRandom.nextInt(4) == 0 ? mRandom.nextInt(2000) : mRandom.nextInt(50);
+                    log("advance " + millis);
+                    mScheduler.advance(millis);
+                    break;
+            }
+        }
+
+        if (operations <= attachAt) {
+            log("attach");
+            mMachine.onAttached();
+        }
+
+        // Let everything settle
+        mScheduler.advance(60 * 60 * 1000);
+
+        check(mScheduler.isIdle(), "work still scheduled after settling");
+        check(mMachine.getDisplayedState() == mMachine.getState(),
+                "displayed " + mMachine.getDisplayedState() + " but requested " + mMachine.getState());
+        check(mTargetDisplayedState == mMachine.getDisplayedState(), "target and state machine disagree on the displayed state");
+    }
+
+    private int nextState() {
+        // Favor loading and content, which are the ones with special handling
+        return mRandom.nextBoolean() ? mRandom.nextInt(2) : mRandom.nextInt(STATE_COUNT);
+    }
+
+    private void onRequest(int state) {
+        final int previous = mMachine.getState();
+
+        if (state == StateMachine.STATE_LOADING && previous != StateMachine.STATE_LOADING) {
+            mLoadingRequestedAt = mScheduler.uptimeMillis();
+            mLoadingRequestedWhileDisplayed = mMachine.getDisplayedState() == StateMachine.STATE_LOADING;
+        }
+
+        mMachine.setState(state);
+    }
+
+    private void onApply(final int state, boolean immediate) {
+        final long now = mScheduler.uptimeMillis();
+        log("apply " + state + (immediate ? " (frame)" : "") + " at " + now);
+
+        check(state == mMachine.getState(), "applied " + state + " but requested " + mMachine.getState());
+
+        if (state == StateMachine.STATE_LOADING && !mLoadingRequestedWhileDisplayed) {
+            check(now - mLoadingRequestedAt >= mShowDelay, "loading applied " + (now - mLoadingRequestedAt) + "ms after it was requested");
+        }
+
+        if (mMachine.getDisplayedState() == StateMachine.STATE_LOADING && state != StateMachine.STATE_LOADING) {
+            check(now - mLoadingDisplayedAt >= mMinShowTime, "loading replaced after only " + (now - mLoadingDisplayedAt) + "ms");
+        }
+
+        cancelPendingDisplay();
+
+        if (mRandom.nextInt(4) == 0) {
+            mPendingDisplay = new Runnable() {
+                @Override
+                public void run() {
+                    mPendingDisplay = null;
+                    display(state);
+                }
+            };
+
+            mScheduler.postDelayed(mPendingDisplay, mRandom.nextInt(100));
+        } else {
+            display(state);
+        }
+    }
+
+    private void display(int state) {
+        log("display " + state + " at " + mScheduler.uptimeMillis());
+
+        if (state == StateMachine.STATE_LOADING && mTargetDisplayedState != StateMachine.STATE_LOADING) {
+            mLoadingDisplayedAt = mScheduler.uptimeMillis();
+        }
+
+        mTargetDisplayedState = state;
+        mMachine.onStateDisplayed(state);
+    }
+
+    private void cancelPendingDisplay() {
+        if (mPendingDisplay != null) {
+            mScheduler.removeCallbacks(mPendingDisplay);
+            mPendingDisplay = null;
+        }
+    }
+
+    private void log(String message) {
+        mLog.add(message);
+    }
+
+    private void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void main(String[] args) {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final Random seeds = args.length > 1 ? null : new Random();
+
+        for (int i = 0; i < iterations; i++) {
+            final long seed = seeds != null ? seeds.nextLong() : Long.parseLong(args[1]);
+            StateMachineFuzzer fuzzer = new StateMachineFuzzer(seed);
+
+            try {
+                fuzzer.run();
+            } catch (AssertionError e) {
+                System.err.println("Failed with seed " + seed + ": " + e.getMessage());
+
+                for (String line : fuzzer.mLog) {
+                    System.err.println("  " + line);
+                }
+
+                System.exit(1);
+            }
+        }
+
+        System.out.println(iterations + " random transition sequences passed");
+    }
+}
@@ -0,0 +1,101 @@
+package com.meetme.android.multistateview.core;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link Scheduler} on a virtual clock, which only moves (running whatever comes due) when told to; frames are drawn every {@link
+ * #FRAME_MILLIS}.
+ */
+final class VirtualScheduler implements Scheduler {
+    static final long FRAME_MILLIS = 16;
+
+    private final PriorityQueue<Task> mTasks = new PriorityQueue<Task>();
+
+    private long mNow;
+
+    private long mSequence;
+
+    @Override
+    public long uptimeMillis() {
+        return mNow;
+    }
+
+    @Override
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        mTasks.add(new Task(mNow + Math.max(0, delayMillis), mSequence++, runnable, false));
+    }
+
+    @Override
+    public void removeCallbacks(Runnable runnable) {
+        remove(runnable, false);
+    }
+
+    @Override
+    public void postFrameCallback(Runnable runnable) {
+        final long nextFrame = (mNow / FRAME_MILLIS + 1) * FRAME_MILLIS;
+        mTasks.add(new Task(nextFrame, mSequence++, runnable, true));
+    }
+
+    @Override
+    public void removeFrameCallback(Runnable runnable) {
+        remove(runnable, true);
+    }
+
+    /**
+     * Moves the clock forward by the given amount, running every task that comes due on the way
+     *
+     * @param millis
+     */
+    void advance(long millis) {
+        final long end = mNow + millis;
+
+        while (!mTasks.isEmpty() && mTasks.peek().mTime <= end) {
+            Task task = mTasks.poll();
+            mNow = task.mTime;
+            task.mRunnable.run();
+        }
+
+        mNow = end;
+    }
+
+    boolean isIdle() {
+        return mTasks.isEmpty();
+    }
+
+    private void remove(Runnable runnable, boolean frame) {
+        for (Iterator<Task> it = mTasks.iterator(); it.hasNext(); ) {
+            Task task = it.next();
+
+            if (task.mRunnable == runnable && task.mFrame == frame) {
+                it.remove();
+            }
+        }
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final long mTime;
+
+        final long mSequence;
+
+        final Runnable mRunnable;
+
+        final boolean mFrame;
+
+        Task(long time, long sequence, Runnable runnable, boolean frame) {
+            mTime = time;
+            mSequence = sequence;
+            mRunnable = runnable;
+            mFrame = frame;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mTime != other.mTime) {
+                return mTime < other.mTime ? -1 : 1;
+            }
+
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.meetme.android.multistateview.core;
+
+/**
+ * Where a {@link StateMachine} runs its delayed and per-frame work. On Android this is the main thread's handler and Choreographer; on the JVM it
+ * can be a virtual clock, so that transitions can be driven deterministically.
+ * <p/>
+ * All methods are called from (and all callbacks must run on) the thread that owns the state machine.
+ */
+public interface Scheduler {
+    /**
+     * @return the current time, in milliseconds, on a monotonic clock
+     */
+    long uptimeMillis();
+
+    void postDelayed(Runnable runnable, long delayMillis);
+
+    void removeCallbacks(Runnable runnable);
+
+    /**
+     * Runs the given runnable once, when the next frame is drawn
+     *
+     * @param runnable
+     */
+    void postFrameCallback(Runnable runnable);
+
+    void removeFrameCallback(Runnable runnable);
+}
@@ -0,0 +1,240 @@
+package com.meetme.android.multistateview.core;
+
+/**
+ * Decides when a requested content state is actually shown. This covers the state applied once attached, the loading show delay and minimum show
+ * time, and coalescing of changes to one per frame. It only deals in state ids and leaves views to its {@link Target}, so it has no Android
+ * dependencies and runs anywhere a {@link Scheduler} can.
+ * <p/>
+ * Not thread-safe: use it from the thread its scheduler runs callbacks on.
+ */
+public final class StateMachine {
+    public static final int STATE_CONTENT = 0;
+
+    public static final int STATE_LOADING = 1;
+
+    /**
+     * Marks the absence of a state
+     */
+    public static final int NO_STATE = -1;
+
+    /**
+     * Receives the decisions of a {@link StateMachine}
+     */
+    public interface Target {
+        /**
+         * Switch to showing the given state now; call {@link StateMachine#onStateDisplayed(int)} once it's (about to be) visible
+         *
+         * @param state
+         * @param immediate true when called from a frame callback, where visibilities should be swapped synchronously
+         */
+        void onApplyState(int state, boolean immediate);
+
+        /**
+         * The given state was requested, but won't be applied until a loading delay has passed. Anything being prepared for a previously requested
+         * state can be dropped.
+         *
+         * @param state
+         */
+        void onApplyDeferred(int state);
+    }
+
+    private final Target mTarget;
+
+    private final Scheduler mScheduler;
+
+    private int mState = STATE_CONTENT;
+
+    /**
+     * The state to apply once attached, or {@link #NO_STATE} once it has been
+     */
+    private int mPendingState = NO_STATE;
+
+    private int mDisplayedState = STATE_CONTENT;
+
+    private long mLoadingShownTime;
+
+    private long mLoadingShowDelay;
+
+    private long mLoadingMinShowTime;
+
+    private boolean mCoalesceStateChanges;
+
+    private boolean mFramePosted;
+
+    private int mCoalescedState;
+
+    /**
+     * Applies the most recently requested state once a loading delay has passed
+     */
+    private final Runnable mDeferredStateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyState(mState);
+        }
+    };
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFramePosted = false;
+            applyStateNow(mCoalescedState, true);
+        }
+    };
+
+    public StateMachine(Target target, Scheduler scheduler) {
+        mTarget = target;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @return the most recently requested state
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * @return the state most recently shown by the target, which lags behind {@link #getState()} while a change is deferred or being prepared
+     */
+    public int getDisplayedState() {
+        return mDisplayedState;
+    }
+
+    /**
+     * Sets the state to apply once {@link #onAttached()} is first called, unless another one is requested before then
+     *
+     * @param state
+     */
+    public void setInitialState(int state) {
+        mPendingState = state;
+    }
+
+    public void onAttached() {
+        if (mPendingState != NO_STATE) {
+            final int state = mPendingState;
+            mPendingState = NO_STATE;
+            setState(state);
+        }
+    }
+
+    /**
+     * Requests the given state
+     *
+     * @param state
+     * @return false if it already was the requested state
+     */
+    public boolean setState(int state) {
+        if (mPendingState != NO_STATE) {
+            // An explicit request always wins over the initial state, even when it matches the current one
+            mPendingState = state;
+        }
+
+        if (state == mState) {
+            return false;
+        }
+
+        mState = state;
+
+        mScheduler.removeCallbacks(mDeferredStateRunnable);
+        removeFrameCallback();
+
+        if (state == STATE_LOADING && mLoadingShowDelay > 0 && mDisplayedState != STATE_LOADING) {
+            // Don't show the loading state at all unless it's still the requested state once the delay has passed
+            mTarget.onApplyDeferred(state);
+            mScheduler.postDelayed(mDeferredStateRunnable, mLoadingShowDelay);
+            return true;
+        }
+
+        applyState(state);
+        return true;
+    }
+
+    /**
+     * Must be called by the target whenever it shows a state
+     *
+     * @param state
+     */
+    public void onStateDisplayed(int state) {
+        if (state == STATE_LOADING && mDisplayedState != STATE_LOADING) {
+            mLoadingShownTime = mScheduler.uptimeMillis();
+        }
+
+        mDisplayedState = state;
+    }
+
+    /**
+     * @param delayMillis how long a request for the loading state waits before it's applied
+     */
+    public void setLoadingShowDelay(long delayMillis) {
+        mLoadingShowDelay = delayMillis;
+    }
+
+    public long getLoadingShowDelay() {
+        return mLoadingShowDelay;
+    }
+
+    /**
+     * @param minShowTimeMillis the minimum amount of time the loading state stays displayed once it has been
+     */
+    public void setLoadingMinShowTime(long minShowTimeMillis) {
+        mLoadingMinShowTime = minShowTimeMillis;
+    }
+
+    public long getLoadingMinShowTime() {
+        return mLoadingMinShowTime;
+    }
+
+    /**
+     * @param coalesce true to apply at most one state per frame: the last one requested before it
+     */
+    public void setCoalesceStateChanges(boolean coalesce) {
+        if (!coalesce && mFramePosted) {
+            // Don't drop the state that was waiting for the next frame
+            removeFrameCallback();
+            applyStateNow(mCoalescedState, false);
+        }
+
+        mCoalesceStateChanges = coalesce;
+    }
+
+    public boolean isCoalesceStateChanges() {
+        return mCoalesceStateChanges;
+    }
+
+    private void applyState(int state) {
+        if (mCoalesceStateChanges) {
+            mCoalescedState = state;
+
+            if (!mFramePosted) {
+                mFramePosted = true;
+                mScheduler.postFrameCallback(mFrameRunnable);
+            }
+
+            return;
+        }
+
+        applyStateNow(state, false);
+    }
+
+    private void applyStateNow(int state, boolean immediate) {
+        // Checked here rather than when the state is requested, since loading may have been displayed in between (say, once its view was inflated)
+        if (mDisplayedState == STATE_LOADING && state != STATE_LOADING && mLoadingMinShowTime > 0) {
+            final long shownFor = mScheduler.uptimeMillis() - mLoadingShownTime;
+
+            if (shownFor < mLoadingMinShowTime) {
+                // Keep the loading state up a little longer so that it doesn't just flash on screen
+                mScheduler.postDelayed(mDeferredStateRunnable, mLoadingMinShowTime - shownFor);
+                return;
+            }
+        }
+
+        mTarget.onApplyState(state, immediate);
+    }
+
+    private void removeFrameCallback() {
+        if (mFramePosted) {
+            mFramePosted = false;
+            mScheduler.removeFrameCallback(mFrameRunnable);
+        }
+    }
+}
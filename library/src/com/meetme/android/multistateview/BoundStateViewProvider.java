@@ -0,0 +1,113 @@
+package com.meetme.android.multistateview;
+
+import android.view.View;
+
+/**
+ * A {@link MultiStateView.StateViewProvider} that binds its views through a holder, ViewHolder-style: child views are looked up once, when a
+ * state view is first shown, and every later show only binds a payload into the holder. Binding is skipped entirely when the payload equals the
+ * one last bound to the same view, so showing a state again with the same content does no lookups and no redundant text layouts.
+ * <p/>
+ * The holder and last payload are kept in a tag of the state view itself, so they follow the view through a {@link StateViewPool} too.
+ *
+ * @param <T> the state view type
+ * @param <H> the holder type
+ * @param <P> the payload type; compared using {@link Object#equals(Object)}
+ */
+public abstract class BoundStateViewProvider<T extends View, H, P> implements MultiStateView.StateViewProvider<T> {
+    /**
+     * Called once per state view, to look up the child views to keep in the holder
+     *
+     * @param stateViewId
+     * @param view
+     * @return
+     */
+    protected abstract H onCreateHolder(int stateViewId, T view);
+
+    /**
+     * Called every time the view is about to be shown
+     *
+     * @param stateViewId
+     * @return the data to show in the view for the given state
+     */
+    protected abstract P getPayload(int stateViewId);
+
+    /**
+     * Called to show the given payload, unless it equals the one last bound to the same view
+     *
+     * @param stateViewId
+     * @param holder
+     * @param payload
+     */
+    protected abstract void onBindHolder(int stateViewId, H holder, P payload);
+
+    @Override
+    public final void onBeforeViewShown(int stateViewId, T view) {
+        bind(stateViewId, view, getPayload(stateViewId));
+    }
+
+    /**
+     * Binds the given payload to the given view, unless it's already bound
+     *
+     * @param stateViewId
+     * @param view
+     * @param payload
+     */
+    public final void bind(int stateViewId, T view, P payload) {
+        final Binding<H> binding = obtainBinding(stateViewId, view);
+
+        if (binding.mBound && (payload == null ? binding.mPayload == null : payload.equals(binding.mPayload))) {
+            return;
+        }
+
+        binding.mBound = true;
+        binding.mPayload = payload;
+        onBindHolder(stateViewId, binding.mHolder, payload);
+    }
+
+    /**
+     * @param stateViewId
+     * @param view
+     * @return the holder of the given view, created if needed
+     */
+    public final H getHolder(int stateViewId, T view) {
+        return obtainBinding(stateViewId, view).mHolder;
+    }
+
+    /**
+     * Forgets the payload last bound to the given view, so that the next show binds again
+     *
+     * @param view
+     */
+    public static void invalidate(View view) {
+        final Binding binding = (Binding) view.getTag(R.id.msv__state_binding);
+
+        if (binding != null) {
+            binding.mBound = false;
+            binding.mPayload = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Binding<H> obtainBinding(int stateViewId, T view) {
+        Binding<H> binding = (Binding<H>) view.getTag(R.id.msv__state_binding);
+
+        if (binding == null) {
+            binding = new Binding<H>(onCreateHolder(stateViewId, view));
+            view.setTag(R.id.msv__state_binding, binding);
+        }
+
+        return binding;
+    }
+
+    private static final class Binding<H> {
+        final H mHolder;
+
+        boolean mBound;
+
+        Object mPayload;
+
+        Binding(H holder) {
+            mHolder = holder;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.meetme.android.multistateview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Runs a callback on the next display frame: through a {@link Choreographer} frame callback where available, or a plain main-thread post on older
+ * platforms. Must be used from the UI thread.
+ */
+final class FrameCallbackCompat {
+    /**
+     * Receives the frame time, in the {@link System#nanoTime()} time base
+     */
+    interface Callback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private final Callback mCallback;
+
+    private Object mFrameCallback;
+
+    private Runnable mRunnable;
+
+    private boolean mPosted;
+
+    FrameCallbackCompat(Callback callback) {
+        mCallback = callback;
+    }
+
+    boolean isPosted() {
+        return mPosted;
+    }
+
+    void post() {
+        if (mPosted) {
+            return;
+        }
+
+        mPosted = true;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            ChoreographerImpl.post(this);
+        } else {
+            MultiStateView.getMainHandler().post(getRunnable());
+        }
+    }
+
+    void remove() {
+        if (!mPosted) {
+            return;
+        }
+
+        mPosted = false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            ChoreographerImpl.remove(this);
+        } else {
+            MultiStateView.getMainHandler().removeCallbacks(getRunnable());
+        }
+    }
+
+    private void dispatch(long frameTimeNanos) {
+        mPosted = false;
+        mCallback.doFrame(frameTimeNanos);
+    }
+
+    private Runnable getRunnable() {
+        if (mRunnable == null) {
+            mRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    dispatch(SystemClock.uptimeMillis() * 1000000L);
+                }
+            };
+        }
+
+        return mRunnable;
+    }
+
+    /**
+     * Kept separate so that {@link Choreographer} is only loaded on platforms that have it
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class ChoreographerImpl {
+        static void post(FrameCallbackCompat compat) {
+            Choreographer.getInstance().postFrameCallback(getFrameCallback(compat));
+        }
+
+        static void remove(FrameCallbackCompat compat) {
+            Choreographer.getInstance().removeFrameCallback(getFrameCallback(compat));
+        }
+
+        private static Choreographer.FrameCallback getFrameCallback(final FrameCallbackCompat compat) {
+            if (compat.mFrameCallback == null) {
+                compat.mFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        compat.dispatch(frameTimeNanos);
+                    }
+                };
+            }
+
+            return (Choreographer.FrameCallback) compat.mFrameCallback;
+        }
+    }
+}
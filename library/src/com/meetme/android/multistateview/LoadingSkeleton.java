@@ -0,0 +1,314 @@
+package com.meetme.android.multistateview;
+
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * Skeleton placeholder for the loading state of a {@link MultiStateView}: a rounded block for each child the content view had when it was last
+ * laid out, with a highlight sweeping across them.
+ * <p/>
+ * Every running skeleton is animated by a single process-wide frame callback, which computes the shimmer phase once per frame and invalidates
+ * only those skeletons whose view is actually on screen; so the cost per frame stays flat no matter how many loading views exist, and all of them
+ * shimmer in sync. UI thread only.
+ */
+final class LoadingSkeleton {
+    static final int DEFAULT_BASE_COLOR = 0xFFE0E0E0;
+
+    static final int DEFAULT_HIGHLIGHT_COLOR = 0xFFF5F5F5;
+
+    private static final long SHIMMER_PERIOD_MILLIS = 1200;
+
+    /**
+     * Frame interval used where there's no {@link android.view.Choreographer}, since posting to the next loop iteration would spin
+     */
+    private static final int FALLBACK_FRAME_MILLIS = 16;
+
+    private static final int MAX_BLOCKS = 32;
+
+    /**
+     * Base size, in dp, that the placeholder lines (drawn when the content view has never been laid out), the gaps between blocks and their
+     * corner radius derive from
+     */
+    private static final int LINE_HEIGHT_DP = 12;
+
+    private static final int FALLBACK_LINES = 3;
+
+    private static final ArrayList<LoadingSkeleton> sRunning = new ArrayList<LoadingSkeleton>();
+
+    private static FrameCallbackCompat sFrameCallback;
+
+    private static Runnable sFallbackFrame;
+
+    /**
+     * Position of the highlight, from 0 to 1, shared by all skeletons
+     */
+    private static float sPhase;
+
+    private final View mHost;
+
+    private final float mDensity;
+
+    /**
+     * Left, top, right and bottom of each block, in the host's coordinates
+     */
+    private final int[] mBlocks = new int[MAX_BLOCKS * 4];
+
+    private int mBlockCount;
+
+    /**
+     * Union of all blocks; the only area invalidated on each frame
+     */
+    private final Rect mBounds = new Rect();
+
+    private final Rect mTmpRect = new Rect();
+
+    private final RectF mTmpRectF = new RectF();
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final Matrix mShaderMatrix = new Matrix();
+
+    private LinearGradient mShader;
+
+    private int mShaderWidth;
+
+    private int mBaseColor = DEFAULT_BASE_COLOR;
+
+    private int mHighlightColor = DEFAULT_HIGHLIGHT_COLOR;
+
+    private boolean mRunning;
+
+    LoadingSkeleton(View host) {
+        mHost = host;
+        mDensity = host.getResources().getDisplayMetrics().density;
+    }
+
+    void setColors(int baseColor, int highlightColor) {
+        mBaseColor = baseColor;
+        mHighlightColor = highlightColor;
+        mShader = null;
+        mHost.invalidate(mBounds);
+    }
+
+    /**
+     * @return the area covered by the blocks, in the host's coordinates
+     */
+    Rect getBounds() {
+        return mBounds;
+    }
+
+    /**
+     * Derives the blocks from the bounds the given content view's children had when it was last laid out (it may well be GONE by now). Falls
+     * back to a few lines of text in the given area if the content view has never been laid out.
+     *
+     * @param content the content view, or null
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     */
+    void snapshot(View content, int left, int top, int right, int bottom) {
+        mBlockCount = 0;
+        mBounds.setEmpty();
+
+        if (content != null && content.getWidth() > 0 && content.getHeight() > 0) {
+            if (content instanceof ViewGroup) {
+                final ViewGroup group = (ViewGroup) content;
+                final int offsetX = content.getLeft() - content.getScrollX();
+                final int offsetY = content.getTop() - content.getScrollY();
+
+                for (int i = 0, count = group.getChildCount(); i < count && mBlockCount < MAX_BLOCKS; i++) {
+                    final View child = group.getChildAt(i);
+
+                    if (child.getVisibility() != View.VISIBLE) {
+                        continue;
+                    }
+
+                    mTmpRect.set(child.getLeft() + offsetX, child.getTop() + offsetY, child.getRight() + offsetX, child.getBottom() + offsetY);
+
+                    // Only what was visible inside the content view (e.g. the rows of a list on screen)
+                    if (mTmpRect.intersect(content.getLeft(), content.getTop(), content.getRight(), content.getBottom())) {
+                        addBlock(mTmpRect.left, mTmpRect.top, mTmpRect.right, mTmpRect.bottom);
+                    }
+                }
+            }
+
+            if (mBlockCount == 0) {
+                addBlock(content.getLeft(), content.getTop(), content.getRight(), content.getBottom());
+            }
+
+            return;
+        }
+
+        final int lineHeight = (int) (LINE_HEIGHT_DP * mDensity + 0.5f);
+
+        for (int i = 0, y = top; i < FALLBACK_LINES && y + 2 * lineHeight <= bottom; i++, y += 2 * lineHeight) {
+            // The last line is shorter, like the end of a paragraph
+            final int width = i == FALLBACK_LINES - 1 ? (right - left) * 2 / 3 : right - left;
+            addBlock(left, y, left + width, y + 2 * lineHeight);
+        }
+    }
+
+    /**
+     * Adds a block for the given area, inset so that adjacent blocks (like the rows of a list) stay apart
+     */
+    private void addBlock(int left, int top, int right, int bottom) {
+        final int gap = (int) (LINE_HEIGHT_DP * mDensity / 2);
+        final int insetX = Math.min(gap / 2, (right - left) / 4);
+        final int insetY = Math.min(gap / 2, (bottom - top) / 4);
+
+        left += insetX;
+        top += insetY;
+        right -= insetX;
+        bottom -= insetY;
+
+        if (right <= left || bottom <= top) {
+            return;
+        }
+
+        final int index = mBlockCount * 4;
+        mBlocks[index] = left;
+        mBlocks[index + 1] = top;
+        mBlocks[index + 2] = right;
+        mBlocks[index + 3] = bottom;
+        mBlockCount++;
+
+        mBounds.union(left, top, right, bottom);
+    }
+
+    void draw(Canvas canvas) {
+        if (mBlockCount == 0) {
+            return;
+        }
+
+        final int width = mHost.getWidth();
+
+        if (mShader == null || mShaderWidth != width) {
+            // Spans the whole host, so that the highlight moves across all blocks as one
+            mShader = new LinearGradient(0, 0, Math.max(width, 1), 0, new int[] {mBaseColor, mHighlightColor, mBaseColor}, null,
+                    Shader.TileMode.CLAMP);
+            mShaderWidth = width;
+            mPaint.setShader(mShader);
+        }
+
+        // Sweeps the highlight from just off the left edge to just off the right edge; outside the gradient, CLAMP draws the base color
+        mShaderMatrix.setTranslate((2 * sPhase - 1) * width, 0);
+        mShader.setLocalMatrix(mShaderMatrix);
+
+        final float radius = LINE_HEIGHT_DP * mDensity / 4;
+
+        for (int i = 0; i < mBlockCount; i++) {
+            final int index = i * 4;
+            mTmpRectF.set(mBlocks[index], mBlocks[index + 1], mBlocks[index + 2], mBlocks[index + 3]);
+            canvas.drawRoundRect(mTmpRectF, radius, radius, mPaint);
+        }
+    }
+
+    /**
+     * Starts animating this skeleton with all the other running ones
+     */
+    void start() {
+        if (mRunning) {
+            return;
+        }
+
+        mRunning = true;
+        sRunning.add(this);
+
+        if (sRunning.size() == 1) {
+            // The clock was idle, so the phase is stale
+            sPhase = phaseAt(SystemClock.uptimeMillis());
+            scheduleFrame();
+        }
+    }
+
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+
+        mRunning = false;
+        sRunning.remove(this);
+
+        if (sRunning.isEmpty()) {
+            unscheduleFrame();
+        }
+    }
+
+    /**
+     * @return how many skeletons the shared clock is animating
+     */
+    static int getRunningCount() {
+        return sRunning.size();
+    }
+
+    private void invalidateIfVisible() {
+        // Off-screen views (hidden, scrolled away, or in a stopped window) don't need to be drawn again
+        if (mHost.isShown() && mHost.getWindowVisibility() == View.VISIBLE && mHost.getLocalVisibleRect(mTmpRect)) {
+            mHost.invalidate(mBounds);
+        }
+    }
+
+    private static float phaseAt(long uptimeMillis) {
+        return (uptimeMillis % SHIMMER_PERIOD_MILLIS) / (float) SHIMMER_PERIOD_MILLIS;
+    }
+
+    private static void doFrame(long frameTimeNanos) {
+        sPhase = phaseAt(frameTimeNanos / 1000000L);
+
+        for (int i = 0, size = sRunning.size(); i < size; i++) {
+            sRunning.get(i).invalidateIfVisible();
+        }
+
+        if (!sRunning.isEmpty()) {
+            scheduleFrame();
+        }
+    }
+
+    private static void scheduleFrame() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (sFrameCallback == null) {
+                sFrameCallback = new FrameCallbackCompat(new FrameCallbackCompat.Callback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        LoadingSkeleton.doFrame(frameTimeNanos);
+                    }
+                });
+            }
+
+            sFrameCallback.post();
+        } else {
+            if (sFallbackFrame == null) {
+                sFallbackFrame = new Runnable() {
+                    @Override
+                    public void run() {
+                        doFrame(SystemClock.uptimeMillis() * 1000000L);
+                    }
+                };
+            }
+
+            MultiStateView.getMainHandler().postDelayed(sFallbackFrame, FALLBACK_FRAME_MILLIS);
+        }
+    }
+
+    private static void unscheduleFrame() {
+        if (sFrameCallback != null) {
+            sFrameCallback.remove();
+        }
+
+        if (sFallbackFrame != null) {
+            MultiStateView.getMainHandler().removeCallbacks(sFallbackFrame);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.meetme.android.multistateview;
+
+import android.os.SystemClock;
+
+import com.meetme.android.multistateview.core.Scheduler;
+
+/**
+ * Runs a {@link com.meetme.android.multistateview.core.StateMachine StateMachine} on the main thread: delayed work goes through the main
+ * handler, and frame callbacks through {@link FrameCallbackCompat}.
+ */
+final class MainThreadScheduler implements Scheduler {
+    /**
+     * The state machine only ever posts a single frame runnable, so one callback is kept for it
+     */
+    private Runnable mFrameRunnable;
+
+    private FrameCallbackCompat mFrameCallback;
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        MultiStateView.getMainHandler().postDelayed(runnable, delayMillis);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable runnable) {
+        MultiStateView.getMainHandler().removeCallbacks(runnable);
+    }
+
+    @Override
+    public void postFrameCallback(final Runnable runnable) {
+        if (runnable != mFrameRunnable) {
+            if (mFrameCallback != null) {
+                mFrameCallback.remove();
+            }
+
+            mFrameRunnable = runnable;
+            mFrameCallback = new FrameCallbackCompat(new FrameCallbackCompat.Callback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    runnable.run();
+                }
+            });
+        }
+
+        mFrameCallback.post();
+    }
+
+    @Override
+    public void removeFrameCallback(Runnable runnable) {
+        if (runnable == mFrameRunnable) {
+            mFrameCallback.remove();
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.meetme.android.multistateview;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.List;
+
+/**
+ * A {@link RecyclerView.Adapter} wrapping another one, which shows loading and error states as rows of the list itself instead of wrapping the
+ * whole {@link RecyclerView} in a {@link MultiStateView}:
+ * <ul>
+ * <li>the content state (see {@link #setContentState(int)}) replaces the wrapped adapter's items with a single row for that state; and</li>
+ * <li>the footer state (see {@link #setFooterState(int)}) adds a "loading more" or "retry" row after them.</li>
+ * </ul>
+ * State rows are plain items with their own view types, so they're recycled (and prefetched) like any other row. Their views come from the same
+ * {@link MultiStateView.StateViewProvider}s used by MultiStateView, and custom states can be registered the same way.
+ * <p/>
+ * Negative view types are reserved for state rows; the wrapped adapter must only use view types &gt;= 0.
+ *
+ * @param <VH> the view holder type of the wrapped adapter
+ */
+public class MultiStateAdapter<VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    /**
+     * Footer state for no footer row at all
+     */
+    public static final int FOOTER_STATE_NONE = MultiStateView.CONTENT_STATE_ID_CONTENT;
+
+    /**
+     * State rows use view types from here up: the state id shifted left by one, with the low bit set for footer rows
+     */
+    private static final int STATE_VIEW_TYPE_BASE = Integer.MIN_VALUE;
+
+    private final RecyclerView.Adapter<VH> mAdapter;
+
+    private final SparseArray<MultiStateView.StateViewProvider> mProviders = new SparseArray<MultiStateView.StateViewProvider>();
+
+    private final SparseArray<MultiStateView.StateViewProvider> mFooterProviders = new SparseArray<MultiStateView.StateViewProvider>();
+
+    private int mState = MultiStateView.CONTENT_STATE_ID_CONTENT;
+
+    private int mFooterState = FOOTER_STATE_NONE;
+
+    private View.OnClickListener mTapToRetryClickListener;
+
+    /**
+     * How many RecyclerViews this adapter is attached to. The wrapped adapter is only observed while there's at least one, so that it doesn't keep
+     * this adapter alive once no list uses it.
+     */
+    private int mAttachedCount;
+
+    /**
+     * Relays the wrapped adapter's changes, which only affect our positions while its items are shown. Only registered while attached to a
+     * RecyclerView: nobody else listens to our changes, and a RecyclerView reads the item count afresh when it's given an adapter.
+     */
+    private final RecyclerView.AdapterDataObserver mObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            if (isShowingContent()) {
+                notifyItemRangeChanged(positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            if (isShowingContent()) {
+                notifyItemRangeChanged(positionStart, itemCount, payload);
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            if (isShowingContent()) {
+                notifyItemRangeInserted(positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            if (isShowingContent()) {
+                notifyItemRangeRemoved(positionStart, itemCount);
+            }
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            // RecyclerView only supports moving single items
+            if (isShowingContent()) {
+                notifyItemMoved(fromPosition, toPosition);
+            }
+        }
+    };
+
+    /**
+     * @param adapter the adapter providing the content items
+     */
+    public MultiStateAdapter(RecyclerView.Adapter<VH> adapter) {
+        mAdapter = adapter;
+        // State rows get ids of their own, so stable ids work whenever the wrapped adapter has them
+        setHasStableIds(adapter.hasStableIds());
+        initStateViewProviders();
+    }
+
+    private void initStateViewProviders() {
+        mProviders.put(MultiStateView.CONTENT_STATE_ID_LOADING, new BuiltinStateViewProvider(R.layout.msv__loading, 0));
+        mProviders.put(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK, new BuiltinStateViewProvider(R.layout.msv__error_network, 0));
+        mProviders.put(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL, new BuiltinStateViewProvider(R.layout.msv__error_unknown, 0));
+
+        mFooterProviders.put(MultiStateView.CONTENT_STATE_ID_LOADING, new BuiltinStateViewProvider(R.layout.msv__footer_loading, 0));
+        mFooterProviders.put(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK,
+                new BuiltinStateViewProvider(R.layout.msv__footer_error, R.string.error_title_network));
+        mFooterProviders.put(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL,
+                new BuiltinStateViewProvider(R.layout.msv__footer_error, R.string.error_title_unknown));
+    }
+
+    /**
+     * @return the wrapped adapter
+     */
+    public RecyclerView.Adapter<VH> getWrappedAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Registers the given provider for rows replacing the whole list in the given state
+     *
+     * @param contentStateId
+     * @param provider
+     */
+    public void registerStateViewProvider(int contentStateId, MultiStateView.StateViewProvider provider) {
+        mProviders.put(contentStateId, provider);
+    }
+
+    /**
+     * Registers the given provider for footer rows in the given state
+     *
+     * @param contentStateId
+     * @param provider
+     */
+    public void registerFooterViewProvider(int contentStateId, MultiStateView.StateViewProvider provider) {
+        mFooterProviders.put(contentStateId, provider);
+    }
+
+    /**
+     * Sets the listener called when an error row (full list or footer) is tapped
+     *
+     * @param listener
+     */
+    public void setOnTapToRetryClickListener(View.OnClickListener listener) {
+        mTapToRetryClickListener = listener;
+    }
+
+    public int getContentState() {
+        return mState;
+    }
+
+    /**
+     * Shows the wrapped adapter's items for {@link MultiStateView#CONTENT_STATE_ID_CONTENT}, or else a single row for the given state in their
+     * place
+     *
+     * @param state
+     */
+    public void setContentState(int state) {
+        if (state == mState) {
+            return;
+        }
+
+        final boolean wasShowingContent = isShowingContent();
+        final int oldCount = getItemCount();
+
+        mState = state;
+
+        if (!wasShowingContent && !isShowingContent()) {
+            // One state row for another
+            notifyItemChanged(0);
+        } else {
+            notifyItemRangeRemoved(0, oldCount);
+            notifyItemRangeInserted(0, getItemCount());
+        }
+    }
+
+    public int getFooterState() {
+        return mFooterState;
+    }
+
+    /**
+     * Shows a row for the given state after the wrapped adapter's items, e.g. {@link MultiStateView#CONTENT_STATE_ID_LOADING} while loading the
+     * next page, or an error state to offer a retry. The footer is only shown along with the content.
+     *
+     * @param state the footer state, or {@link #FOOTER_STATE_NONE}
+     */
+    public void setFooterState(int state) {
+        if (state == mFooterState) {
+            return;
+        }
+
+        final boolean hadFooter = hasFooter();
+
+        mFooterState = state;
+
+        if (!isShowingContent()) {
+            return;
+        }
+
+        final int position = mAdapter.getItemCount();
+
+        if (hadFooter && hasFooter()) {
+            notifyItemChanged(position);
+        } else if (hadFooter) {
+            notifyItemRemoved(position);
+        } else {
+            notifyItemInserted(position);
+        }
+    }
+
+    private boolean isShowingContent() {
+        return mState == MultiStateView.CONTENT_STATE_ID_CONTENT;
+    }
+
+    private boolean hasFooter() {
+        return mFooterState != FOOTER_STATE_NONE;
+    }
+
+    /**
+     * @param position
+     * @return true if the row at the given position is a state row rather than one of the wrapped adapter's
+     */
+    public boolean isStateRow(int position) {
+        return !isShowingContent() || position >= mAdapter.getItemCount();
+    }
+
+    @Override
+    public int getItemCount() {
+        if (!isShowingContent()) {
+            return 1;
+        }
+
+        return mAdapter.getItemCount() + (hasFooter() ? 1 : 0);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        if (!isShowingContent()) {
+            return STATE_VIEW_TYPE_BASE + (mState << 1);
+        }
+
+        if (position >= mAdapter.getItemCount()) {
+            return STATE_VIEW_TYPE_BASE + (mFooterState << 1 | 1);
+        }
+
+        return mAdapter.getItemViewType(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (!isShowingContent()) {
+            return Long.MIN_VALUE + (mState << 1);
+        }
+
+        if (position >= mAdapter.getItemCount()) {
+            return Long.MIN_VALUE + (mFooterState << 1 | 1);
+        }
+
+        return mAdapter.getItemId(position);
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        if (viewType >= 0) {
+            return mAdapter.onCreateViewHolder(parent, viewType);
+        }
+
+        final int type = viewType - STATE_VIEW_TYPE_BASE;
+        final int state = type >>> 1;
+        final boolean footer = (type & 1) != 0;
+
+        MultiStateView.StateViewProvider provider = (footer ? mFooterProviders : mProviders).get(state);
+
+        if (provider == null) {
+            throw new IllegalStateException("No " + (footer ? "footer " : "") + "view provider registered for state " + state);
+        }
+
+        View view = provider.onCreateStateView(parent.getContext(), parent, state);
+
+        if (view == null) {
+            throw new IllegalStateException("View provider for state " + state + " returned no view");
+        }
+
+        return new StateViewHolder(view, state, provider);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        if (holder instanceof StateViewHolder) {
+            ((StateViewHolder) holder).bind();
+        } else {
+            mAdapter.onBindViewHolder((VH) holder, position);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        if (holder instanceof StateViewHolder) {
+            ((StateViewHolder) holder).bind();
+        } else {
+            mAdapter.onBindViewHolder((VH) holder, position, payloads);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        if (!(holder instanceof StateViewHolder)) {
+            mAdapter.onViewRecycled((VH) holder);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean onFailedToRecycleView(RecyclerView.ViewHolder holder) {
+        if (holder instanceof StateViewHolder) {
+            return false;
+        }
+
+        return mAdapter.onFailedToRecycleView((VH) holder);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onViewAttachedToWindow(RecyclerView.ViewHolder holder) {
+        if (!(holder instanceof StateViewHolder)) {
+            mAdapter.onViewAttachedToWindow((VH) holder);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onViewDetachedFromWindow(RecyclerView.ViewHolder holder) {
+        if (!(holder instanceof StateViewHolder)) {
+            mAdapter.onViewDetachedFromWindow((VH) holder);
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        if (mAttachedCount++ == 0) {
+            mAdapter.registerAdapterDataObserver(mObserver);
+        }
+
+        mAdapter.onAttachedToRecyclerView(recyclerView);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        mAdapter.onDetachedFromRecyclerView(recyclerView);
+
+        if (--mAttachedCount == 0) {
+            mAdapter.unregisterAdapterDataObserver(mObserver);
+        }
+    }
+
+    /**
+     * Holds the view of a state row
+     */
+    public static final class StateViewHolder extends RecyclerView.ViewHolder {
+        private final int mState;
+
+        private final MultiStateView.StateViewProvider mProvider;
+
+        StateViewHolder(View itemView, int state, MultiStateView.StateViewProvider provider) {
+            super(itemView);
+            mState = state;
+            mProvider = provider;
+        }
+
+        /**
+         * @return the state this row shows
+         */
+        public int getState() {
+            return mState;
+        }
+
+        @SuppressWarnings("unchecked")
+        void bind() {
+            mProvider.onBeforeViewShown(mState, itemView);
+        }
+    }
+
+    /**
+     * Inflates the library's own layouts, setting the error title (if any) and the tap to retry listener on them
+     */
+    private class BuiltinStateViewProvider implements MultiStateView.StateViewProvider<View> {
+        private final int mLayoutResId;
+
+        private final int mTitleResId;
+
+        BuiltinStateViewProvider(int layoutResId, int titleResId) {
+            mLayoutResId = layoutResId;
+            mTitleResId = titleResId;
+        }
+
+        @Override
+        public View onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+            View view = LayoutInflater.from(context).inflate(mLayoutResId, container, false);
+
+            if (mTitleResId != 0) {
+                ((TextView) view.findViewById(R.id.error_title)).setText(mTitleResId);
+            }
+
+            if (stateViewId != MultiStateView.CONTENT_STATE_ID_LOADING) {
+                view.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        if (mTapToRetryClickListener != null) {
+                            mTapToRetryClickListener.onClick(v);
+                        }
+                    }
+                });
+            }
+
+            return view;
+        }
+
+        @Override
+        public void onBeforeViewShown(int stateViewId, View view) {
+        }
+    }
+}
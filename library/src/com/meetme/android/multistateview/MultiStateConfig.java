@@ -0,0 +1,242 @@
+package com.meetme.android.multistateview;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+
+import com.meetme.android.multistateview.MultiStateView.MultiStateViewData;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The resolved XML attributes of a {@link MultiStateView}. Instances are immutable and shared between every view inflated with the same theme,
+ * style and attribute values, so that inflating a list full of identical views only resolves (and allocates) their attributes once.
+ * <p/>
+ * The {@link #data} is shared too: views must copy it before changing anything in it.
+ */
+final class MultiStateConfig {
+    /**
+     * Resolved configs per theme, keyed by the attributes they were resolved from. Themes are only weakly referenced, so configs go away with the
+     * activities that used them.
+     */
+    private static final Map<Resources.Theme, HashMap<Key, MultiStateConfig>> sCache = new WeakHashMap<Resources.Theme, HashMap<Key, MultiStateConfig>>();
+
+    final MultiStateViewData data;
+
+    final int initialState;
+
+    final int prewarmFlags;
+
+    final int loadingShowDelay;
+
+    final int loadingMinShowTime;
+
+    final boolean coalesceStateChanges;
+
+    final int maxCachedStateViews;
+
+    final boolean detachInactiveStates;
+
+    final int transitionDuration;
+
+    final boolean loadingSkeleton;
+
+    /**
+     * Drawables can't be shared between views, but their constant state can
+     */
+    private final Drawable.ConstantState mLoadingDrawableState;
+
+    /**
+     * Only set when the loading drawable has no constant state, in which case this config is never shared
+     */
+    private final Drawable mLoadingDrawable;
+
+    private final Configuration mConfiguration;
+
+    private MultiStateConfig(Context context, AttributeSet attrs) {
+        TypedArray a = context.getTheme().obtainStyledAttributes(attrs, R.styleable.MultiStateView, 0, 0);
+
+        try {
+            initialState = a.getInt(R.styleable.MultiStateView_msvState, MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+            data = new MultiStateViewData(initialState);
+            data.loadingLayoutResId = a.getResourceId(R.styleable.MultiStateView_msvLoadingLayout, R.layout.msv__loading);
+            data.generalErrorLayoutResId = a.getResourceId(R.styleable.MultiStateView_msvErrorUnknownLayout, R.layout.msv__error_unknown);
+            data.networkErrorLayoutResId = a.getResourceId(R.styleable.MultiStateView_msvErrorNetworkLayout, R.layout.msv__error_network);
+            data.networkErrorTitleString = getString(context, a, R.styleable.MultiStateView_msvErrorTitleNetworkStringId, R.string.error_title_network);
+            data.generalErrorTitleString = getString(context, a, R.styleable.MultiStateView_msvErrorTitleUnknownStringId, R.string.error_title_unknown);
+            data.tapToRetryString = getString(context, a, R.styleable.MultiStateView_msvErrorTapToRetryStringId, R.string.tap_to_retry);
+
+            prewarmFlags = a.getInt(R.styleable.MultiStateView_msvPrewarmStates, 0);
+            loadingShowDelay = a.getInt(R.styleable.MultiStateView_msvLoadingShowDelay, 0);
+            loadingMinShowTime = a.getInt(R.styleable.MultiStateView_msvLoadingMinShowTime, 0);
+            coalesceStateChanges = a.getBoolean(R.styleable.MultiStateView_msvCoalesceStateChanges, false);
+            maxCachedStateViews = a.getInt(R.styleable.MultiStateView_msvMaxCachedStateViews, 0);
+            detachInactiveStates = a.getBoolean(R.styleable.MultiStateView_msvDetachInactiveStates, false);
+            transitionDuration = a.getInt(R.styleable.MultiStateView_msvTransitionDuration, 0);
+            loadingSkeleton = a.getBoolean(R.styleable.MultiStateView_msvLoadingSkeleton, false);
+
+            Drawable loadingDrawable = a.getDrawable(R.styleable.MultiStateView_msvLoadingDrawable);
+            mLoadingDrawableState = loadingDrawable != null ? loadingDrawable.getConstantState() : null;
+            mLoadingDrawable = mLoadingDrawableState == null ? loadingDrawable : null;
+        } finally {
+            a.recycle();
+        }
+
+        mConfiguration = new Configuration(context.getResources().getConfiguration());
+    }
+
+    /**
+     * Returns the config for the given attributes, resolving them only if no view with the same theme and attributes has done so already
+     *
+     * @param context
+     * @param attrs
+     * @return
+     */
+    static MultiStateConfig obtain(Context context, AttributeSet attrs) {
+        final Resources.Theme theme = context.getTheme();
+        final Key key = new Key(attrs);
+
+        synchronized (sCache) {
+            HashMap<Key, MultiStateConfig> configs = sCache.get(theme);
+
+            if (configs != null) {
+                MultiStateConfig config = configs.get(key);
+
+                // The theme outlives configuration changes when an activity handles them itself, so make sure the strings are still right
+                if (config != null && config.mConfiguration.equals(context.getResources().getConfiguration())) {
+                    return config;
+                }
+            }
+        }
+
+        MultiStateConfig config = new MultiStateConfig(context, attrs);
+
+        if (config.mLoadingDrawable == null) {
+            synchronized (sCache) {
+                HashMap<Key, MultiStateConfig> configs = sCache.get(theme);
+
+                if (configs == null) {
+                    configs = new HashMap<Key, MultiStateConfig>();
+                    sCache.put(theme, configs);
+                }
+
+                configs.put(key, config);
+            }
+        }
+
+        return config;
+    }
+
+    /**
+     * @param res
+     * @return a new loading drawable for a single view, or null if none was set
+     */
+    Drawable newLoadingDrawable(Resources res) {
+        if (mLoadingDrawableState != null) {
+            return mLoadingDrawableState.newDrawable(res);
+        }
+
+        return mLoadingDrawable;
+    }
+
+    private static String getString(Context context, TypedArray a, int index, int defaultResId) {
+        String value = a.getString(index);
+        return value != null ? value : context.getString(defaultResId);
+    }
+
+    /**
+     * Identifies a set of attributes by their style and the raw values of the {@link MultiStateView} attributes in them. References to theme
+     * attributes are kept unresolved, which is fine since configs are cached per theme.
+     */
+    private static final class Key {
+        private final int mStyle;
+
+        private final int[] mNames;
+
+        private final String[] mValues;
+
+        private final int mHashCode;
+
+        Key(AttributeSet attrs) {
+            int style = 0;
+            int count = 0;
+            int[] names = null;
+            String[] values = null;
+
+            if (attrs != null) {
+                style = attrs.getStyleAttribute();
+
+                final int attributeCount = attrs.getAttributeCount();
+
+                for (int i = 0; i < attributeCount; i++) {
+                    final int name = attrs.getAttributeNameResource(i);
+
+                    if (!isMultiStateAttribute(name)) {
+                        continue;
+                    }
+
+                    if (names == null) {
+                        names = new int[attributeCount - i];
+                        values = new String[attributeCount - i];
+                    }
+
+                    names[count] = name;
+                    values[count] = attrs.getAttributeValue(i);
+                    count++;
+                }
+            }
+
+            mStyle = style;
+            mNames = count == 0 ? null : new int[count];
+            mValues = count == 0 ? null : new String[count];
+
+            if (count > 0) {
+                // Arrays.copyOf() isn't available on all the platforms we support
+                System.arraycopy(names, 0, mNames, 0, count);
+                System.arraycopy(values, 0, mValues, 0, count);
+            }
+
+            mHashCode = 31 * (31 * style + Arrays.hashCode(mNames)) + Arrays.hashCode(mValues);
+        }
+
+        private static boolean isMultiStateAttribute(int name) {
+            if (name == 0) {
+                return false;
+            }
+
+            for (int attr : R.styleable.MultiStateView) {
+                if (attr == name) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return mStyle == other.mStyle && Arrays.equals(mNames, other.mNames) && Arrays.equals(mValues, other.mValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
@@ -1,28 +1,56 @@
 package com.meetme.android.multistateview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.MessageQueue;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.SparseArray;
+import android.view.Gravity;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewStub;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
+import com.meetme.android.multistateview.core.StateMachine;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A view designed to wrap a single child (the "content") and hide/show that content based on the current "state" (see {@link ContentState}) of this
  * View. Note that this layout can only have one direct descendant which is used as the "content" view
  */
 public class MultiStateView extends FrameLayout {
 
-    public static final int CONTENT_STATE_ID_CONTENT = 0;
+    public static final int CONTENT_STATE_ID_CONTENT = StateMachine.STATE_CONTENT;
 
-    public static final int CONTENT_STATE_ID_LOADING = 1;
+    public static final int CONTENT_STATE_ID_LOADING = StateMachine.STATE_LOADING;
 
     public static final int CONTENT_STATE_ID_ERROR_NETWORK = 2;
 
@@ -30,7 +58,49 @@ public class MultiStateView extends FrameLayout {
 
     public final static int MIN_CONTENT_STATE_ID = CONTENT_STATE_ID_ERROR_GENERAL + 1;
 
-    private MultiStateViewData mViewState = new MultiStateViewData(CONTENT_STATE_ID_CONTENT);
+    /**
+     * Hide policy (see {@link #setStateHidePolicy(int, int)}): the state's view is made {@link View#GONE} while another state is displayed
+     */
+    public static final int HIDE_POLICY_GONE = 0;
+
+    /**
+     * Hide policy: the state's view is made {@link View#INVISIBLE}, so it keeps its measured size and layout while another state is displayed
+     */
+    public static final int HIDE_POLICY_INVISIBLE = 1;
+
+    /**
+     * Hide policy: the state's view stays visible, with the displayed state drawn on top of it
+     */
+    public static final int HIDE_POLICY_OVERLAY = 2;
+
+    /**
+     * Decides when requested states are shown; this view only shows them
+     */
+    private final StateMachine mStateMachine = new StateMachine(new StateMachine.Target() {
+        @Override
+        public void onApplyState(int state, boolean immediate) {
+            applyContentStateNow(state, immediate);
+        }
+
+        @Override
+        public void onApplyDeferred(int state) {
+            // Whatever we were inflating in the background is no longer wanted
+            cancelPendingInflation();
+        }
+    }, new MainThreadScheduler());
+
+    /**
+     * Layouts and strings for the built-in states. Starts out shared with every other view inflated from the same attributes (see {@link
+     * MultiStateConfig}), and is only copied once something in it changes; see {@link #editViewState()}.
+     */
+    private MultiStateViewData mViewState;
+
+    private boolean mViewStateShared;
+
+    /**
+     * What {@link #mViewState} looked like right after parsing XML attributes; only differences from this are saved
+     */
+    private MultiStateViewData mDefaultViewState;
 
     private View mContentView;
 
@@ -44,9 +114,11 @@ public class MultiStateView extends FrameLayout {
 
     private MultiStateHandler mHandler;
 
-    private SparseArray<StateViewProvider> mProviders;
+    private final StateRegistry mRegistry = new StateRegistry();
+
+    private final StateTrace mTrace = new StateTrace(this);
 
-    private final StateViewProvider mBuiltinProvider = new StateViewProvider() {
+    private final BoundStateViewProvider<View, ErrorViewHolder, String> mBuiltinProvider = new BoundStateViewProvider<View, ErrorViewHolder, String>() {
         @Override
         public View onCreateStateView(Context context, ViewGroup container, int stateViewId) {
             switch (stateViewId) {
@@ -57,7 +129,8 @@ public class MultiStateView extends FrameLayout {
                     return getGeneralErrorView();
 
                 case CONTENT_STATE_ID_LOADING:
-                    return getLoadingView();
+                    // A loading drawable or skeleton is drawn directly by MultiStateView, without any view
+                    return mLoadingDrawable != null || mLoadingSkeleton != null ? null : getLoadingView();
 
                 case CONTENT_STATE_ID_CONTENT:
                     return getContentView();
@@ -67,20 +140,201 @@ public class MultiStateView extends FrameLayout {
         }
 
         @Override
-        public void onBeforeViewShown(int stateViewId, View view) {
-            if (stateViewId == CONTENT_STATE_ID_ERROR_GENERAL) {
-                TextView textView = ((TextView) view.findViewById(R.id.error_title));
+        protected ErrorViewHolder onCreateHolder(int stateViewId, View view) {
+            return getErrorTitle(stateViewId) != null ? new ErrorViewHolder(view) : null;
+        }
 
-                if (textView != null) {
-                    textView.setText(getGeneralErrorTitleString());
-                }
+        @Override
+        protected String getPayload(int stateViewId) {
+            return getErrorTitle(stateViewId);
+        }
+
+        @Override
+        protected void onBindHolder(int stateViewId, ErrorViewHolder holder, String title) {
+            if (holder != null) {
+                holder.setTitle(title);
             }
         }
     };
 
-    private SparseArray<View> mStateViewCache = new SparseArray<View>();
+    private boolean mAsyncInflationEnabled;
+
+    private Executor mInflationExecutor;
+
+    private PendingInflation mPendingInflation;
+
+    /**
+     * State whose view failed to inflate in the background while this view was detached, and is inflated again once attached; {@link
+     * StateMachine#NO_STATE} if none
+     */
+    private int mRetryInflationState = StateMachine.NO_STATE;
+
+    private static Executor sDefaultInflationExecutor;
+
+    private boolean mDetachInactiveStates;
+
+    /**
+     * The state most recently made visible by {@link MultiStateHandler} (or a coalesced swap)
+     */
+    private int mVisibleState = CONTENT_STATE_ID_CONTENT;
+
+    private OnStateChangedListener mOnStateChangedListener;
+
+    private long mStateTransitionDuration;
+
+    private static final int LOADING_LEVEL_FRAME_MILLIS = 16;
+
+    /**
+     * Cycles the level of the loading drawable once a second
+     */
+    private static final int LOADING_LEVEL_STEP = 10000 * LOADING_LEVEL_FRAME_MILLIS / 1000;
+
+    private Drawable mLoadingDrawable;
+
+    private boolean mLoadingDrawableVisible;
+
+    private LoadingSkeleton mLoadingSkeleton;
+
+    private boolean mLoadingSkeletonVisible;
+
+    private int mLoadingSkeletonBaseColor = LoadingSkeleton.DEFAULT_BASE_COLOR;
+
+    private int mLoadingSkeletonHighlightColor = LoadingSkeleton.DEFAULT_HIGHLIGHT_COLOR;
+
+    private final Runnable mLoadingLevelRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Level changes invalidate the drawable's bounds through verifyDrawable()
+            mLoadingDrawable.setLevel((mLoadingDrawable.getLevel() + LOADING_LEVEL_STEP) % 10000);
+            postDelayed(this, LOADING_LEVEL_FRAME_MILLIS);
+        }
+    };
+
+    private StateMetrics mMetrics;
+
+    /**
+     * The child measured by the last {@link #onMeasure(int, int)}, if it measured only the displayed state's view; null if it fell back to {@link
+     * FrameLayout}'s measurement
+     */
+    private View mMeasuredChild;
+
+    private final Rect mTmpPadding = new Rect();
+
+    private final Rect mTmpForegroundPadding = new Rect();
+
+    private final Rect mTmpContainerRect = new Rect();
+
+    private final Rect mTmpChildRect = new Rect();
+
+    /**
+     * The latest state passed to {@link #postContentState(int)}
+     */
+    private final AtomicInteger mPostedState = new AtomicInteger();
+
+    /**
+     * Whether {@link #mApplyPostedStateRunnable} is waiting to run; at most one is ever queued
+     */
+    private final AtomicBoolean mPostedStateScheduled = new AtomicBoolean();
+
+    private final Runnable mApplyPostedStateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag before reading, so that a state posted after the read schedules another run
+            mPostedStateScheduled.set(false);
+            setContentState(mPostedState.get());
+        }
+    };
+
+    private StateSource mStateSource;
+
+    private long mStateSourceDebounce;
+
+    private boolean mStateSourceObserved;
+
+    /**
+     * The last state emitted by {@link #mStateSource}, which may not have been applied yet while debouncing
+     */
+    private int mStateSourceState;
+
+    private final StateSource.Observer mStateSourceObserver = new StateSource.Observer() {
+        @Override
+        public void onStateChanged(StateSource source, int state) {
+            onStateSourceChanged(state);
+        }
+    };
+
+    private final Runnable mApplyStateSourceRunnable = new Runnable() {
+        @Override
+        public void run() {
+            setContentState(mStateSourceState);
+        }
+    };
+
+    private static Handler sMainHandler;
+
+    private StateViewPool mStateViewPool;
+
+    private int mMaxCachedStateViews;
+
+    private long mStateUseCounter;
+
+    /**
+     * The single {@link ComponentCallbacks2} (API 14+) registered for all instances; typed loosely so that older platforms never load the
+     * interface
+     */
+    private static Object sMemoryCallbacks;
+
+    /**
+     * Attached instances, notified of memory pressure by {@link #sMemoryCallbacks}; only weakly referenced, and only touched on the UI thread
+     */
+    private static WeakHashMap<MultiStateView, Boolean> sMemoryCallbackViews;
+
+    private static final long DEFAULT_PREWARM_BUDGET_MILLIS = 4;
+
+    private int[] mPrewarmQueue = new int[0];
+
+    private int mPrewarmCount;
+
+    private long mPrewarmBudgetMillis = DEFAULT_PREWARM_BUDGET_MILLIS;
+
+    private boolean mPrewarmScheduled;
+
+    private final MessageQueue.IdleHandler mPrewarmIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            final long start = SystemClock.uptimeMillis();
+
+            // Always make progress by at least one state, even if a single inflation blows the budget
+            do {
+                prewarmState(mPrewarmQueue[0]);
+                System.arraycopy(mPrewarmQueue, 1, mPrewarmQueue, 0, --mPrewarmCount);
+            } while (mPrewarmCount > 0 && SystemClock.uptimeMillis() - start < mPrewarmBudgetMillis);
+
+            mPrewarmScheduled = mPrewarmCount > 0;
+            return mPrewarmScheduled;
+        }
+    };
+
+    private final Runnable mRecycleStateViewsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Only give the views away if we weren't re-attached in the meantime
+            if (getWindowToken() == null) {
+                recycleHiddenStateViews();
+            }
+        }
+    };
 
-    private int mPendingState = -1;
+    public static interface OnStateChangedListener {
+        /**
+         * Called when a state has just been made visible
+         *
+         * @param view
+         * @param previousState the state that was visible before
+         * @param newState
+         */
+        void onStateChanged(MultiStateView view, int previousState, int newState);
+    }
 
     public static interface StateViewProvider<T extends View> {
         /**
@@ -110,7 +364,7 @@ public class MultiStateView extends FrameLayout {
      * @param provider
      */
     public void registerStateViewProvider(int contentStateId, StateViewProvider provider) {
-        mProviders.put(contentStateId, provider);
+        mRegistry.setProvider(contentStateId, provider);
     }
 
     public MultiStateView(Context context) {
@@ -123,17 +377,15 @@ public class MultiStateView extends FrameLayout {
 
     public MultiStateView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        // Start out with a default handler/looper
-        mHandler = new MultiStateHandler();
+        // Start out with the main looper; the constructing thread may not have one (e.g. async inflation)
+        mHandler = new MultiStateHandler(Looper.getMainLooper());
         parseAttrs(context, attrs);
         initStateViewProvider();
     }
 
     private void initStateViewProvider() {
-        mProviders = new SparseArray<StateViewProvider>(ContentState.values().length);
-
-        for (ContentState value : ContentState.values()) {
-            mProviders.put(value.nativeInt, mBuiltinProvider);
+        for (int state = CONTENT_STATE_ID_CONTENT; state < MIN_CONTENT_STATE_ID; state++) {
+            mRegistry.setProvider(state, mBuiltinProvider);
         }
     }
 
@@ -144,55 +396,57 @@ public class MultiStateView extends FrameLayout {
      * @param attrs
      */
     private void parseAttrs(Context context, AttributeSet attrs) {
-        TypedArray a = context.getTheme().obtainStyledAttributes(attrs, R.styleable.MultiStateView, 0, 0);
-
-        try {
-            setLoadingLayoutResourceId(a.getResourceId(R.styleable.MultiStateView_msvLoadingLayout, R.layout.msv__loading));
-            setGeneralErrorLayoutResourceId(a.getResourceId(R.styleable.MultiStateView_msvErrorUnknownLayout, R.layout.msv__error_unknown));
-            setNetworkErrorLayoutResourceId(a.getResourceId(R.styleable.MultiStateView_msvErrorNetworkLayout, R.layout.msv__error_network));
-
-            String tmpString;
-
-            tmpString = a.getString(R.styleable.MultiStateView_msvErrorTitleNetworkStringId);
-
-            if (tmpString == null) {
-                tmpString = context.getString(R.string.error_title_network);
-            }
-
-            setNetworkErrorTitleString(tmpString);
-
-            tmpString = a.getString(R.styleable.MultiStateView_msvErrorTitleUnknownStringId);
-
-            if (tmpString == null) {
-                tmpString = context.getString(R.string.error_title_unknown);
-            }
-
-            setGeneralErrorTitleString(tmpString);
-
-            tmpString = a.getString(R.styleable.MultiStateView_msvErrorTapToRetryStringId);
-
-            if (tmpString == null) {
-                tmpString = context.getString(R.string.tap_to_retry);
+        // Views inflated from the same theme and attributes (say, every row of a list) all share one resolved config
+        final MultiStateConfig config = MultiStateConfig.obtain(context, attrs);
+
+        mViewState = mDefaultViewState = config.data;
+        mViewStateShared = true;
+        mStateMachine.setInitialState(config.initialState);
+
+        setLoadingShowDelay(config.loadingShowDelay);
+        setLoadingMinShowTime(config.loadingMinShowTime);
+        setCoalesceStateChanges(config.coalesceStateChanges);
+        setMaxCachedStateViews(config.maxCachedStateViews);
+        setDetachInactiveStates(config.detachInactiveStates);
+        setStateTransitionDuration(config.transitionDuration);
+        setLoadingDrawable(config.newLoadingDrawable(context.getResources()));
+        setLoadingSkeletonEnabled(config.loadingSkeleton);
+
+        for (int state = CONTENT_STATE_ID_LOADING; state < MIN_CONTENT_STATE_ID; state++) {
+            if ((config.prewarmFlags & (1 << state)) != 0) {
+                prewarmStates(state);
             }
+        }
+    }
 
-            setTapToRetryString(tmpString);
-
-            mPendingState = a.getInt(R.styleable.MultiStateView_msvState, CONTENT_STATE_ID_CONTENT);
-        } finally {
-            a.recycle();
+    /**
+     * @return {@link #mViewState}, copied first if it's still shared with other views
+     */
+    private MultiStateViewData editViewState() {
+        if (mViewStateShared) {
+            mViewState = new MultiStateViewData(mViewState);
+            mViewStateShared = false;
         }
+
+        return mViewState;
     }
 
     private void setNetworkErrorLayoutResourceId(int resourceId) {
-        mViewState.networkErrorLayoutResId = resourceId;
+        if (resourceId != mViewState.networkErrorLayoutResId) {
+            editViewState().networkErrorLayoutResId = resourceId;
+        }
     }
 
     private void setGeneralErrorLayoutResourceId(int resourceId) {
-        mViewState.generalErrorLayoutResId = resourceId;
+        if (resourceId != mViewState.generalErrorLayoutResId) {
+            editViewState().generalErrorLayoutResId = resourceId;
+        }
     }
 
     private void setNetworkErrorTitleString(String string) {
-        mViewState.networkErrorTitleString = string;
+        if (!TextUtils.equals(string, mViewState.networkErrorTitleString)) {
+            editViewState().networkErrorTitleString = string;
+        }
     }
 
     public String getNetworkErrorTitleString() {
@@ -200,18 +454,18 @@ public class MultiStateView extends FrameLayout {
     }
 
     private void setGeneralErrorTitleString(String string) {
-        mViewState.generalErrorTitleString = string;
+        if (!TextUtils.equals(string, mViewState.generalErrorTitleString)) {
+            editViewState().generalErrorTitleString = string;
+        }
     }
 
     public void setCustomErrorString(String string) {
-        mViewState.customErrorString = string;
+        if (!TextUtils.equals(string, mViewState.customErrorString)) {
+            editViewState().customErrorString = string;
+        }
 
         if (mGeneralErrorView != null) {
-            TextView view = ((TextView) mGeneralErrorView.findViewById(R.id.error_title));
-
-            if (view != null) {
-                view.setText(string);
-            }
+            mBuiltinProvider.bind(CONTENT_STATE_ID_ERROR_GENERAL, mGeneralErrorView, getErrorTitle(CONTENT_STATE_ID_ERROR_GENERAL));
         }
     }
 
@@ -220,7 +474,9 @@ public class MultiStateView extends FrameLayout {
     }
 
     private void setTapToRetryString(String string) {
-        mViewState.tapToRetryString = string;
+        if (!TextUtils.equals(string, mViewState.tapToRetryString)) {
+            editViewState().tapToRetryString = string;
+        }
     }
 
     public String getTapToRetryString() {
@@ -232,11 +488,13 @@ public class MultiStateView extends FrameLayout {
     }
 
     public void setLoadingLayoutResourceId(int loadingLayout) {
-        this.mViewState.loadingLayoutResId = loadingLayout;
+        if (loadingLayout != mViewState.loadingLayoutResId) {
+            editViewState().loadingLayoutResId = loadingLayout;
+        }
     }
 
     public int getContentState() {
-        return mViewState.state;
+        return mStateMachine.getState();
     }
 
     /**
@@ -247,15 +505,17 @@ public class MultiStateView extends FrameLayout {
      * @deprecated
      */
     public ContentState getState() {
-        if (mViewState.state < MIN_CONTENT_STATE_ID) {
-            ContentState.getState(mViewState.state);
+        final int state = mStateMachine.getState();
+
+        if (state < MIN_CONTENT_STATE_ID) {
+            return ContentState.getState(state);
         }
 
         throw new IllegalStateException("Attempting to get a state for a custom state");
     }
 
     /**
-     * Configures the view to be in the given state.
+     * Configures the view to be in the given state. Must be called from the UI thread; use {@link #postContentState(int)} from other threads.
      *
      * @param state
      * @see #CONTENT_STATE_ID_CONTENT
@@ -265,122 +525,1404 @@ public class MultiStateView extends FrameLayout {
      * @see #registerStateViewProvider(int, com.meetme.android.multistateview.MultiStateView.StateViewProvider)
      */
     public void setContentState(int state) {
-        final int previousState = mViewState.state;
+        if (mMetrics != null && state != mStateMachine.getState()) {
+            mMetrics.onStateRequested(state, SystemClock.uptimeMillis());
+        }
 
-        if (state == previousState) {
-            // No change
-            return;
+        mStateMachine.setState(state);
+    }
+
+    /**
+     * Thread-safe version of {@link #setContentState(int)}. Called off the UI thread, the state is recorded and applied from the UI thread later;
+     * any number of calls made before then collapse into a single change to the latest state.
+     *
+     * @param state
+     */
+    public void postContentState(int state) {
+        mPostedState.set(state);
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            // Any run still queued will just find the state we apply here
+            setContentState(state);
+        } else if (mPostedStateScheduled.compareAndSet(false, true)) {
+            getMainHandler().post(mApplyPostedStateRunnable);
         }
+    }
+
+    /**
+     * Switches the displayed views to the given state right away
+     *
+     * @param state
+     * @param immediate true to swap visibilities synchronously, false to let {@link MultiStateHandler} do it after other pending UI work
+     */
+    private void applyContentStateNow(int state, boolean immediate) {
+        // Whatever we were inflating in the background is no longer wanted
+        cancelPendingInflation();
+
+        if (mAsyncInflationEnabled && mRegistry.getView(state) == null && !(state == CONTENT_STATE_ID_CONTENT && mContentView != null)
+                && !isDrawnState(state)) {
+            View pooled = obtainPooledBuiltinStateView(state);
+
+            if (pooled == null) {
+                // Keep showing the previous state until the new view has been inflated off the UI thread
+                mPendingInflation = new PendingInflation(state);
+                getInflationExecutor().execute(mPendingInflation);
+                return;
+            }
 
-        if (mPendingState != -1) {
-            mPendingState = state;
+            onStateViewCreated(state, pooled);
         }
 
+        showStateView(state, immediate);
+    }
+
+    /**
+     * Hides the currently displayed state view and shows the view for the given state (inflating it, if needed)
+     *
+     * @param state
+     * @param immediate true to swap visibilities synchronously, false to let {@link MultiStateHandler} do it after other pending UI work
+     */
+    private void showStateView(int state, boolean immediate) {
+        final int previousState = mStateMachine.getDisplayedState();
+
         // Remove any previously pending show events for the previously-shown (since we're going to add one in the future)
-        mHandler.removeMessages(MultiStateHandler.MESSAGE_SHOW, previousState);
+        mHandler.removeMessages(messageWhat(MultiStateHandler.MESSAGE_SHOW, previousState));
         // Remove any previously pending hide events for the to-be-shown state
-        mHandler.removeMessages(MultiStateHandler.MESSAGE_HIDE, state);
+        mHandler.removeMessages(messageWhat(MultiStateHandler.MESSAGE_HIDE, state));
 
-        if (previousState != -1) {
+        if (previousState != -1 && previousState != state && !immediate) {
             // Only change visibility after other UI tasks have been performed
-            mHandler.sendMessage(mHandler.obtainMessage(MultiStateHandler.MESSAGE_HIDE, previousState));
+            mHandler.sendEmptyMessage(messageWhat(MultiStateHandler.MESSAGE_HIDE, previousState));
         }
 
         View newStateView = getStateView(state);
 
         if (newStateView != null) {
             if (newStateView.getParent() == null) {
+                if (mStateTransitionDuration > 0) {
+                    // Let the show fade it in, rather than having it pop in as soon as it's added
+                    newStateView.setVisibility(View.GONE);
+                }
+
                 addView(newStateView);
             }
 
-            mProviders.get(state).onBeforeViewShown(state, newStateView);
+            final boolean traced = mTrace.begin(StateTrace.OP_BIND, state);
+
+            try {
+                mRegistry.getProvider(state).onBeforeViewShown(state, newStateView);
+            } finally {
+                if (traced) {
+                    StateTrace.end();
+                }
+            }
         }
 
-        mHandler.sendMessage(mHandler.obtainMessage(MultiStateHandler.MESSAGE_SHOW, state));
+        if (immediate) {
+            if (previousState != -1 && previousState != state) {
+                setStateViewVisibility(previousState, View.GONE);
+            }
+
+            setStateViewVisibility(state, View.VISIBLE);
+            onStateShown(state);
+        } else {
+            mHandler.sendEmptyMessage(messageWhat(MultiStateHandler.MESSAGE_SHOW, state));
+        }
 
-        mViewState.state = state;
+        mStateMachine.onStateDisplayed(state);
+        mTrace.recordTransition(state);
+        mRegistry.setLastUsed(state, ++mStateUseCounter);
+        trimStateViewCache();
     }
 
     /**
-     * Configures the view to be in the given state, hiding and showing internally maintained-views as needed
+     * Sets the visibility of the (already created) view for the given state
      *
      * @param state
-     * @deprecated
+     * @param visibility
      */
-    public void setState(final ContentState state) {
-        setContentState(state.nativeInt);
+    private void setStateViewVisibility(int state, int visibility) {
+        final boolean traced = mTrace.begin(visibility == View.VISIBLE ? StateTrace.OP_SHOW : StateTrace.OP_HIDE, state);
+
+        try {
+            applyStateVisibility(state, visibility);
+        } finally {
+            if (traced) {
+                StateTrace.end();
+            }
+        }
     }
 
-    private View getStateView(int stateViewId) {
-        // Check if we have it cached first (we only need to create once per config)
-        View view = mStateViewCache.get(stateViewId);
+    private void applyStateVisibility(int state, int visibility) {
+        if (isDrawnState(state)) {
+            if (mLoadingSkeleton != null) {
+                setLoadingSkeletonVisible(visibility == View.VISIBLE);
+            } else {
+                setLoadingDrawableVisible(visibility == View.VISIBLE);
+            }
+
+            return;
+        }
+
+        // Only touch views we already have; a hidden view may have been returned to the pool in the meantime
+        View view = mRegistry.getView(state);
+
+        if (view == null && state == CONTENT_STATE_ID_CONTENT) {
+            // The content view is only cached once it has been shown through getStateView()
+            view = mContentView;
+        }
 
         if (view == null) {
-            // Not cached, pull from the provider
-            view = mProviders.get(stateViewId).onCreateStateView(getContext(), this, stateViewId);
+            return;
+        }
 
-            // And store in cache
-            mStateViewCache.put(stateViewId, view);
+        if (visibility != View.VISIBLE) {
+            final int policy = mRegistry.getHidePolicy(state);
+
+            if (policy == HIDE_POLICY_OVERLAY) {
+                // Stays visible underneath whatever is displayed now
+                return;
+            }
+
+            visibility = policy == HIDE_POLICY_INVISIBLE ? View.INVISIBLE : View.GONE;
         }
 
-        return view;
+        if (mStateTransitionDuration > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1 && getWindowToken() != null) {
+            new StateTransition(view, visibility).start();
+            return;
+        }
+
+        if (view.getTag(R.id.msv__state_transition) != null) {
+            ((StateTransition) view.getTag(R.id.msv__state_transition)).finish();
+        }
+
+        applyStateViewVisibility(view, visibility);
+    }
+
+    private void applyStateViewVisibility(View view, int visibility) {
+        view.setVisibility(visibility);
+
+        if (visibility == View.GONE && shouldDetachWhenHidden(view)) {
+            // Nothing to re-layout: the view was already GONE. It's added back by showStateView() when shown again
+            removeViewInLayout(view);
+        }
+    }
+
+    /**
+     * Jumps every running state transition to its end
+     */
+    private void finishStateTransitions() {
+        for (int i = mRegistry.size() - 1; i >= 0; i--) {
+            finishStateTransition(mRegistry.getView(mRegistry.stateAt(i)));
+        }
+
+        // The content view may be faded without being in the registry (see applyStateVisibility())
+        finishStateTransition(mContentView);
+    }
+
+    private static void finishStateTransition(View view) {
+        if (view != null && view.getTag(R.id.msv__state_transition) != null) {
+            ((StateTransition) view.getTag(R.id.msv__state_transition)).finish();
+        }
     }
 
     /**
-     * Returns the given view corresponding to the specified {@link ContentState}
-     *
      * @param state
-     * @return
+     * @return true if the given state is drawn by this view itself, rather than shown with a state view
      */
-    public View getStateView(ContentState state) {
-        return getStateView(state.nativeInt);
+    private boolean isDrawnState(int state) {
+        return state == CONTENT_STATE_ID_LOADING && (mLoadingDrawable != null || mLoadingSkeleton != null)
+                && mRegistry.getProvider(state) == mBuiltinProvider;
     }
 
     /**
-     * Returns the view to be displayed for the case of a network error
+     * Enables a skeleton in place of the loading layout (or loading drawable): shimmering placeholder blocks where the content view's children
+     * were when it was last laid out, or a few placeholder lines if it never was. Like a loading drawable, it's drawn directly by this view without
+     * inflating anything; and all skeletons in the process are animated by one shared frame callback that only redraws those on screen, so a
+     * list full of loading cells costs about as much as a single one.
      *
-     * @return
+     * @param enabled
+     * @see R.attr#msvLoadingSkeleton
+     * @see #setLoadingSkeletonColors(int, int)
      */
-    public View getNetworkErrorView() {
-        if (mNetworkErrorView == null) {
-            mNetworkErrorView = View.inflate(getContext(), mViewState.networkErrorLayoutResId, null);
+    public void setLoadingSkeletonEnabled(boolean enabled) {
+        if (enabled == (mLoadingSkeleton != null)) {
+            return;
+        }
 
-            ((TextView) mNetworkErrorView.findViewById(R.id.error_title)).setText(getNetworkErrorTitleString());
-            ((TextView) mNetworkErrorView.findViewById(R.id.tap_to_retry)).setText(getTapToRetryString());
+        final boolean showing = hideDisplayedLoadingState();
 
-            mNetworkErrorView.setOnClickListener(mTapToRetryClickListener);
+        mLoadingSkeleton = null;
+
+        if (enabled) {
+            mLoadingSkeleton = new LoadingSkeleton(this);
+            mLoadingSkeleton.setColors(mLoadingSkeletonBaseColor, mLoadingSkeletonHighlightColor);
         }
 
-        return mNetworkErrorView;
+        if (showing) {
+            showStateView(CONTENT_STATE_ID_LOADING, true);
+        }
+    }
+
+    public boolean isLoadingSkeletonEnabled() {
+        return mLoadingSkeleton != null;
     }
 
     /**
-     * Returns the view to be displayed for the case of an unknown error
+     * Sets the colors of the loading skeleton's blocks, and of the highlight sweeping across them
      *
-     * @return
+     * @param baseColor
+     * @param highlightColor
+     * @see #setLoadingSkeletonEnabled(boolean)
      */
-    public View getGeneralErrorView() {
-        if (mGeneralErrorView == null) {
-            mGeneralErrorView = View.inflate(getContext(), mViewState.generalErrorLayoutResId, null);
+    public void setLoadingSkeletonColors(int baseColor, int highlightColor) {
+        mLoadingSkeletonBaseColor = baseColor;
+        mLoadingSkeletonHighlightColor = highlightColor;
+
+        if (mLoadingSkeleton != null) {
+            mLoadingSkeleton.setColors(baseColor, highlightColor);
+        }
+    }
 
-            ((TextView) mGeneralErrorView.findViewById(R.id.error_title)).setText(getGeneralErrorTitleString());
-            ((TextView) mGeneralErrorView.findViewById(R.id.tap_to_retry)).setText(getTapToRetryString());
+    private void setLoadingSkeletonVisible(boolean visible) {
+        mLoadingSkeletonVisible = visible;
 
-            mGeneralErrorView.setOnClickListener(mTapToRetryClickListener);
+        if (visible) {
+            // Blocks follow the content's layout at the time loading starts
+            updateLoadingSkeletonBlocks();
         }
 
-        return mGeneralErrorView;
+        updateLoadingSkeletonAnimation(getWindowToken() != null);
+        invalidate(mLoadingSkeleton.getBounds());
+    }
+
+    private void updateLoadingSkeletonBlocks() {
+        mLoadingSkeleton.snapshot(mContentView, getPaddingLeft(), getPaddingTop(), getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
+    }
+
+    /**
+     * Runs the skeleton's shimmer only while it's showing in an attached window
+     *
+     * @param attached whether this view is (still) attached to a window
+     */
+    private void updateLoadingSkeletonAnimation(boolean attached) {
+        if (mLoadingSkeletonVisible && attached) {
+            mLoadingSkeleton.start();
+        } else {
+            mLoadingSkeleton.stop();
+        }
+    }
+
+    /**
+     * Sets a drawable (typically an animated spinner) that's drawn centered in this view for the loading state, in place of the loading layout. No
+     * view is inflated or attached for the loading state in this mode, and only the drawable's bounds are invalidated while it animates. {@link
+     * Animatable} drawables are started and stopped; any other drawable has its level cycled.
+     *
+     * @param drawable the drawable to use, or null to use the loading layout
+     * @see R.attr#msvLoadingDrawable
+     */
+    public void setLoadingDrawable(Drawable drawable) {
+        if (drawable == mLoadingDrawable) {
+            return;
+        }
+
+        // Switching between a drawn and an inflated loading state while it's displayed: hide it the old way, and show it again the new way
+        final boolean showing = hideDisplayedLoadingState();
+
+        if (mLoadingDrawable != null) {
+            mLoadingDrawable.setCallback(null);
+            unscheduleDrawable(mLoadingDrawable);
+        }
+
+        mLoadingDrawable = drawable;
+
+        if (drawable != null) {
+            drawable.setCallback(this);
+            drawable.setVisible(false, false);
+            updateLoadingDrawableBounds();
+        }
+
+        if (showing) {
+            showStateView(CONTENT_STATE_ID_LOADING, true);
+        }
+
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Hides the loading state, whether drawn or shown with a view, if it's the displayed state; used before changing how it's rendered
+     *
+     * @return true if it was displayed, and should be shown again once the change is made
+     */
+    private boolean hideDisplayedLoadingState() {
+        if (mStateMachine.getDisplayedState() != CONTENT_STATE_ID_LOADING) {
+            return false;
+        }
+
+        setStateViewVisibility(CONTENT_STATE_ID_LOADING, View.GONE);
+        return true;
+    }
+
+    public Drawable getLoadingDrawable() {
+        return mLoadingDrawable;
+    }
+
+    private void setLoadingDrawableVisible(boolean visible) {
+        if (mLoadingDrawable == null) {
+            mLoadingDrawableVisible = false;
+            return;
+        }
+
+        mLoadingDrawableVisible = visible;
+        updateLoadingDrawableAnimation(getWindowToken() != null);
+        invalidate(mLoadingDrawable.getBounds());
+    }
+
+    /**
+     * Runs the loading drawable's animation only while it's showing in an attached window
+     *
+     * @param attached whether this view is (still) attached to a window
+     */
+    private void updateLoadingDrawableAnimation(boolean attached) {
+        final boolean animate = mLoadingDrawableVisible && attached;
+
+        mLoadingDrawable.setVisible(animate, false);
+
+        if (mLoadingDrawable instanceof Animatable) {
+            if (animate) {
+                ((Animatable) mLoadingDrawable).start();
+            } else {
+                ((Animatable) mLoadingDrawable).stop();
+            }
+        } else {
+            removeCallbacks(mLoadingLevelRunnable);
+
+            if (animate) {
+                post(mLoadingLevelRunnable);
+            }
+        }
+    }
+
+    private void updateLoadingDrawableBounds() {
+        if (mLoadingDrawable == null) {
+            return;
+        }
+
+        final int left = getPaddingLeft();
+        final int top = getPaddingTop();
+        final int availableWidth = getWidth() - left - getPaddingRight();
+        final int availableHeight = getHeight() - top - getPaddingBottom();
+
+        int width = mLoadingDrawable.getIntrinsicWidth();
+        int height = mLoadingDrawable.getIntrinsicHeight();
+
+        if (width < 0 || width > availableWidth) {
+            width = availableWidth;
+        }
+
+        if (height < 0 || height > availableHeight) {
+            height = availableHeight;
+        }
+
+        final int x = left + (availableWidth - width) / 2;
+        final int y = top + (availableHeight - height) / 2;
+
+        mLoadingDrawable.setBounds(x, y, x + width, y + height);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateLoadingDrawableBounds();
+
+        if (mLoadingSkeletonVisible) {
+            updateLoadingSkeletonBlocks();
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+
+        if (mLoadingDrawableVisible) {
+            mLoadingDrawable.draw(canvas);
+        }
+
+        if (mLoadingSkeletonVisible) {
+            mLoadingSkeleton.draw(canvas);
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mLoadingDrawable || super.verifyDrawable(who);
+    }
+
+    /**
+     * Sets the duration of the cross-fade between the views of the previous and new state. Each view is faded on a hardware layer, which is only
+     * kept for the duration of its fade. A state change in the middle of a fade picks up from the current alpha. Requires API 12; defaults to 0 (no
+     * animation).
+     *
+     * @param durationMillis
+     * @see R.attr#msvTransitionDuration
+     */
+    public void setStateTransitionDuration(long durationMillis) {
+        mStateTransitionDuration = durationMillis;
+    }
+
+    public long getStateTransitionDuration() {
+        return mStateTransitionDuration;
+    }
+
+    private boolean shouldDetachWhenHidden(View view) {
+        return mDetachInactiveStates && view != mContentView && view.getParent() == this;
+    }
+
+    /**
+     * Called once the given state has actually been made visible
+     *
+     * @param state
+     */
+    private void onStateShown(int state) {
+        final int previousState = mVisibleState;
+
+        if (state == previousState) {
+            return;
+        }
+
+        mVisibleState = state;
+
+        if (mMetrics != null) {
+            mMetrics.onStateShown(state, SystemClock.uptimeMillis());
+        }
+
+        if (mOnStateChangedListener != null) {
+            mOnStateChangedListener.onStateChanged(this, previousState, state);
+        }
+    }
+
+    /**
+     * Sets a listener notified each time a new state actually becomes visible (which can be some time after {@link #setContentState(int)}, e.g.
+     * with loading delays, coalescing or asynchronous inflation)
+     *
+     * @param listener
+     */
+    public void setOnStateChangedListener(OnStateChangedListener listener) {
+        mOnStateChangedListener = listener;
+    }
+
+    /**
+     * Enables or disables collecting {@link StateMetrics} for this view. Disabling discards anything collected so far.
+     *
+     * @param enabled
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            mMetrics = null;
+        } else if (mMetrics == null) {
+            mMetrics = new StateMetrics();
+        }
+    }
+
+    /**
+     * @return the metrics collected for this view, or null if they're not enabled (see {@link #setMetricsEnabled(boolean)})
+     */
+    public StateMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Globally enables or disables tracing of all MultiStateViews: {@link android.os.Trace} sections (API 18+) around state view inflation,
+     * binding and showing/hiding, labeled with the view's id and the state, and a history of recent transitions for {@link #dump(String,
+     * FileDescriptor, PrintWriter, String[])}. Costs nothing but a field read while disabled, which is the default.
+     *
+     * @param enabled
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        StateTrace.setEnabled(enabled);
+    }
+
+    public static boolean isTracingEnabled() {
+        return StateTrace.isEnabled();
+    }
+
+    /**
+     * Prints the state of this view and, when tracing is enabled (see {@link #setTracingEnabled(boolean)}), its recent transitions and what they
+     * cost. Meant to be called from an Activity's or Fragment's {@code dump()}, so that it shows up in {@code adb shell dumpsys activity}.
+     *
+     * @param prefix text to print at the start of every line
+     * @param fd
+     * @param writer
+     * @param args
+     */
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.print(prefix);
+        writer.print("MultiStateView(");
+        writer.print(StateTrace.getViewName(this));
+        writer.println("):");
+
+        final String innerPrefix = prefix + "  ";
+
+        writer.print(innerPrefix);
+        writer.print("requested=");
+        writer.print(mStateMachine.getState());
+        writer.print(" displayed=");
+        writer.print(mStateMachine.getDisplayedState());
+        writer.print(" visible=");
+        writer.println(mVisibleState);
+
+        mTrace.dumpHistory(innerPrefix, writer);
+    }
+
+    /**
+     * Sets how the view of the given state is hidden while another state is displayed. The default, {@link #HIDE_POLICY_GONE}, takes the view out
+     * of layout entirely, so showing it again measures and lays out its whole subtree from scratch. {@link #HIDE_POLICY_INVISIBLE} keeps it laid
+     * out (a large list keeps its measured layout and scroll position), and {@link #HIDE_POLICY_OVERLAY} keeps it visible under the displayed
+     * state, e.g. for a pull-to-refresh style loading indicator over the content.
+     * <p/>
+     * Can also be set from XML, with {@code app:layout_msvHidePolicy} on the content child, a state ViewStub, or the root of a state layout.
+     *
+     * @param state
+     * @param policy one of {@link #HIDE_POLICY_GONE}, {@link #HIDE_POLICY_INVISIBLE} or {@link #HIDE_POLICY_OVERLAY}
+     * @see R.attr#layout_msvHidePolicy
+     */
+    public void setStateHidePolicy(int state, int policy) {
+        if (policy < HIDE_POLICY_GONE || policy > HIDE_POLICY_OVERLAY) {
+            throw new IllegalArgumentException("Unknown hide policy " + policy);
+        }
+
+        if (policy == mRegistry.getHidePolicy(state)) {
+            return;
+        }
+
+        mRegistry.setHidePolicy(state, policy);
+
+        if (state != mStateMachine.getDisplayedState()) {
+            // Re-hide it the new way; an overlaid view has to be shown again
+            setStateViewVisibility(state, policy == HIDE_POLICY_OVERLAY ? View.VISIBLE : View.GONE);
+        }
+
+        requestLayout();
+    }
+
+    public int getStateHidePolicy(int state) {
+        return mRegistry.getHidePolicy(state);
+    }
+
+    /**
+     * Takes the hide policy declared in XML by the given child's layout params, if any. The child's visibility is left alone: it's only being
+     * added, and will be shown or hidden by the next transition.
+     *
+     * @param state
+     * @param params
+     */
+    private void applyDeclaredHidePolicy(int state, ViewGroup.LayoutParams params) {
+        if (params instanceof LayoutParams && ((LayoutParams) params).hidePolicy != LayoutParams.NO_HIDE_POLICY) {
+            mRegistry.setHidePolicy(state, ((LayoutParams) params).hidePolicy);
+        }
+    }
+
+    /**
+     * When enabled, hidden state views (other than the content view) are removed from this view entirely, rather than just made {@link View#GONE},
+     * and are only kept in the cache. Measure, layout, draw, touch and accessibility traversals then only ever see the displayed state. Views are
+     * added back when their state is shown again. Defaults to false.
+     *
+     * @param detach
+     * @see R.attr#msvDetachInactiveStates
+     */
+    public void setDetachInactiveStates(boolean detach) {
+        mDetachInactiveStates = detach;
+
+        if (!detach) {
+            return;
+        }
+
+        for (int i = mRegistry.size() - 1; i >= 0; i--) {
+            final int state = mRegistry.stateAt(i);
+            final View view = mRegistry.getView(state);
+
+            if (view != null && view.getVisibility() == View.GONE && !isStateInUse(state) && shouldDetachWhenHidden(view)) {
+                removeViewInLayout(view);
+            }
+        }
+    }
+
+    public boolean isDetachInactiveStates() {
+        return mDetachInactiveStates;
+    }
+
+    /**
+     * When enabled, state changes are applied at most once per frame: only the last state requested before the next frame is shown, in a single
+     * swap of visibilities run from a frame callback. Intermediate states never have their views created or attached. Defaults to false.
+     *
+     * @param coalesce
+     * @see R.attr#msvCoalesceStateChanges
+     */
+    public void setCoalesceStateChanges(boolean coalesce) {
+        mStateMachine.setCoalesceStateChanges(coalesce);
+    }
+
+    public boolean isCoalesceStateChanges() {
+        return mStateMachine.isCoalesceStateChanges();
+    }
+
+    /**
+     * Shows whatever state the given source emits, as if each were passed to {@link #setContentState(int)}
+     *
+     * @param source
+     * @see #bindStateSource(StateSource, long)
+     */
+    public void bindStateSource(StateSource source) {
+        bindStateSource(source, 0);
+    }
+
+    /**
+     * Shows whatever state the given source emits. Emissions equal to the previous one are dropped before they cause any work, and with a debounce
+     * window, a state is only applied once the source has stopped emitting for that long.
+     * <p/>
+     * The source is only observed while this view is attached to a window: nothing is delivered while detached, and on reattaching only the
+     * source's latest state is applied, right away.
+     *
+     * @param source the source to follow, or null to stop following the current one
+     * @param debounceMillis how long the source must be quiet before its state is applied; 0 to apply every distinct state as it comes
+     */
+    public void bindStateSource(StateSource source, long debounceMillis) {
+        if (mStateSource != null) {
+            stopObservingStateSource();
+        }
+
+        mStateSource = source;
+        mStateSourceDebounce = debounceMillis;
+
+        if (source != null && getWindowToken() != null) {
+            startObservingStateSource();
+        }
+    }
+
+    public void unbindStateSource() {
+        bindStateSource(null, 0);
+    }
+
+    public StateSource getStateSource() {
+        return mStateSource;
+    }
+
+    private void startObservingStateSource() {
+        if (mStateSourceObserved) {
+            return;
+        }
+
+        mStateSourceObserved = true;
+        mStateSource.addObserver(mStateSourceObserver);
+
+        // Anything emitted while we weren't observing has settled by now, so there's nothing to debounce
+        mStateSourceState = mStateSource.getState();
+        setContentState(mStateSourceState);
+    }
+
+    private void stopObservingStateSource() {
+        if (!mStateSourceObserved) {
+            return;
+        }
+
+        mStateSourceObserved = false;
+        mStateSource.removeObserver(mStateSourceObserver);
+        getMainHandler().removeCallbacks(mApplyStateSourceRunnable);
+    }
+
+    private void onStateSourceChanged(int state) {
+        if (state == mStateSourceState) {
+            // Distinct until changed
+            return;
+        }
+
+        mStateSourceState = state;
+
+        if (mStateSourceDebounce > 0) {
+            getMainHandler().removeCallbacks(mApplyStateSourceRunnable);
+            getMainHandler().postDelayed(mApplyStateSourceRunnable, mStateSourceDebounce);
+        } else {
+            setContentState(state);
+        }
+    }
+
+    /**
+     * Sets how long a request for the loading state waits before the loading view is actually shown. If another state is requested before then,
+     * the loading view is never created or attached. Defaults to 0 (show immediately).
+     *
+     * @param delayMillis
+     * @see R.attr#msvLoadingShowDelay
+     */
+    public void setLoadingShowDelay(long delayMillis) {
+        mStateMachine.setLoadingShowDelay(delayMillis);
+    }
+
+    public long getLoadingShowDelay() {
+        return mStateMachine.getLoadingShowDelay();
+    }
+
+    /**
+     * Sets the minimum amount of time the loading view stays visible once it has been shown, so that it doesn't flicker when loading finishes
+     * right after it appeared. Defaults to 0 (hide immediately).
+     *
+     * @param minShowTimeMillis
+     * @see R.attr#msvLoadingMinShowTime
+     */
+    public void setLoadingMinShowTime(long minShowTimeMillis) {
+        mStateMachine.setLoadingMinShowTime(minShowTimeMillis);
+    }
+
+    public long getLoadingMinShowTime() {
+        return mStateMachine.getLoadingMinShowTime();
+    }
+
+    /**
+     * Enables or disables asynchronous inflation of state views. When enabled, a state whose view hasn't been created yet is inflated on the
+     * inflation executor (see {@link #setInflationExecutor(Executor)}), and the previously displayed state stays visible until the new view is
+     * ready. Changing the state again before inflation finishes cancels the pending inflation.
+     * <p/>
+     * Note that {@link StateViewProvider#onCreateStateView(Context, ViewGroup, int)} is called off the UI thread in this mode, so custom
+     * providers must not touch any attached views from it.
+     * <p/>
+     * An exception thrown while creating a view is rethrown on the UI thread, but only when the view would have been shown: it's dropped if the
+     * state was changed in the meantime, and creating the view is tried again on attach if this view was detached by then.
+     *
+     * @param enabled
+     */
+    public void setAsyncInflationEnabled(boolean enabled) {
+        mAsyncInflationEnabled = enabled;
+    }
+
+    public boolean isAsyncInflationEnabled() {
+        return mAsyncInflationEnabled;
+    }
+
+    /**
+     * Sets the executor used to inflate state views when asynchronous inflation is enabled. Defaults to a single background thread shared by all
+     * MultiStateView instances.
+     *
+     * @param executor the executor to use, or null for the shared default
+     */
+    public void setInflationExecutor(Executor executor) {
+        mInflationExecutor = executor;
+    }
+
+    private Executor getInflationExecutor() {
+        if (mInflationExecutor != null) {
+            return mInflationExecutor;
+        }
+
+        synchronized (MultiStateView.class) {
+            if (sDefaultInflationExecutor == null) {
+                sDefaultInflationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "MultiStateView-inflater");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+
+            return sDefaultInflationExecutor;
+        }
+    }
+
+    private void cancelPendingInflation() {
+        mRetryInflationState = StateMachine.NO_STATE;
+
+        if (mPendingInflation != null) {
+            mPendingInflation.cancelled = true;
+            mPendingInflation = null;
+        }
+    }
+
+    /**
+     * Creates the view for a state from values resolved on the UI thread, without touching any of this view's mutable fields, so that it can
+     * safely be called off the UI thread. Built-in views are only inflated here; they're bound once delivered.
+     *
+     * @param provider the state's provider
+     * @param layoutResId the layout to inflate for a built-in state, or 0
+     * @param stateViewId
+     * @return
+     */
+    private View createStateViewInBackground(StateViewProvider provider, int layoutResId, int stateViewId) {
+        if (provider != mBuiltinProvider) {
+            return provider.onCreateStateView(getContext(), this, stateViewId);
+        }
+
+        return layoutResId != 0 ? View.inflate(getContext(), layoutResId, null) : null;
+    }
+
+    /**
+     * @param stateViewId
+     * @return the layout currently set for the given built-in state, or 0 if it isn't one
+     */
+    private int getBuiltinLayoutResId(int stateViewId) {
+        switch (stateViewId) {
+            case CONTENT_STATE_ID_ERROR_NETWORK:
+                return mViewState.networkErrorLayoutResId;
+
+            case CONTENT_STATE_ID_ERROR_GENERAL:
+                return mViewState.generalErrorLayoutResId;
+
+            case CONTENT_STATE_ID_LOADING:
+                return mViewState.loadingLayoutResId;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Borrows a built-in state view from the {@link StateViewPool}, if one is set and has a view available
+     *
+     * @param stateViewId
+     * @return
+     */
+    private View obtainPooledBuiltinStateView(int stateViewId) {
+        if (mStateViewPool == null || mRegistry.getProvider(stateViewId) != mBuiltinProvider) {
+            return null;
+        }
+
+        switch (stateViewId) {
+            case CONTENT_STATE_ID_ERROR_NETWORK:
+                View networkErrorView = mStateViewPool.getRecycledView(stateViewId, mViewState.networkErrorLayoutResId);
+                return networkErrorView == null ? null : bindErrorView(stateViewId, networkErrorView);
+
+            case CONTENT_STATE_ID_ERROR_GENERAL:
+                View generalErrorView = mStateViewPool.getRecycledView(stateViewId, mViewState.generalErrorLayoutResId);
+                return generalErrorView == null ? null : bindErrorView(stateViewId, generalErrorView);
+
+            case CONTENT_STATE_ID_LOADING:
+                return mStateViewPool.getRecycledView(stateViewId, mViewState.loadingLayoutResId);
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores a view that was created outside of {@link #getStateView(int)}
+     *
+     * @param stateViewId
+     * @param view
+     */
+    private void onStateViewCreated(int stateViewId, View view) {
+        if (mRegistry.getProvider(stateViewId) == mBuiltinProvider) {
+            switch (stateViewId) {
+                case CONTENT_STATE_ID_ERROR_NETWORK:
+                    mNetworkErrorView = view;
+                    view.setOnClickListener(mTapToRetryClickListener);
+                    break;
+
+                case CONTENT_STATE_ID_ERROR_GENERAL:
+                    mGeneralErrorView = view;
+                    view.setOnClickListener(mTapToRetryClickListener);
+                    break;
+
+                case CONTENT_STATE_ID_LOADING:
+                    mLoadingView = view;
+                    break;
+            }
+        }
+
+        cacheStateView(stateViewId, view);
+    }
+
+    /**
+     * Stores the given view as the one to use for the given state, marking it as owned by this MultiStateView
+     *
+     * @param stateViewId
+     * @param view
+     */
+    private void cacheStateView(int stateViewId, View view) {
+        mRegistry.setView(stateViewId, view);
+
+        if (view != null) {
+            applyDeclaredHidePolicy(stateViewId, view.getLayoutParams());
+            view.setTag(R.id.msv__state_view_owner, this);
+        }
+    }
+
+    /**
+     * Queues the views for the given states to be created while the UI thread is idle, so that the first switch to any of them is only a
+     * visibility change. The work is spread over idle slices, each limited to {@link #setPrewarmBudgetMillis(long)} milliseconds (a slice always
+     * creates at least one view). Nothing is created before this view is attached to a window. Must be called from the UI thread.
+     *
+     * @param states
+     * @see R.attr#msvPrewarmStates
+     */
+    public void prewarmStates(int... states) {
+        for (int state : states) {
+            if (isPrewarmQueued(state)) {
+                continue;
+            }
+
+            if (mPrewarmCount == mPrewarmQueue.length) {
+                int[] queue = new int[mPrewarmCount + 4];
+                System.arraycopy(mPrewarmQueue, 0, queue, 0, mPrewarmCount);
+                mPrewarmQueue = queue;
+            }
+
+            mPrewarmQueue[mPrewarmCount++] = state;
+        }
+
+        schedulePrewarm();
+    }
+
+    /**
+     * Sets the maximum amount of time spent creating prewarmed state views per idle slice
+     *
+     * @param budgetMillis
+     * @see #prewarmStates(int...)
+     */
+    public void setPrewarmBudgetMillis(long budgetMillis) {
+        mPrewarmBudgetMillis = budgetMillis;
+    }
+
+    private boolean isPrewarmQueued(int state) {
+        for (int i = 0; i < mPrewarmCount; i++) {
+            if (mPrewarmQueue[i] == state) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Registers the idle handler with the UI thread's queue. Only done while attached: the view may be constructed on another thread (e.g. by an
+     * async inflater), possibly one without a looper, whereas attach always happens on the UI thread.
+     */
+    private void schedulePrewarm() {
+        if (!mPrewarmScheduled && mPrewarmCount > 0 && getWindowToken() != null) {
+            mPrewarmScheduled = true;
+            Looper.myQueue().addIdleHandler(mPrewarmIdleHandler);
+        }
+    }
+
+    private void unschedulePrewarm() {
+        if (mPrewarmScheduled) {
+            mPrewarmScheduled = false;
+            Looper.myQueue().removeIdleHandler(mPrewarmIdleHandler);
+        }
+    }
+
+    /**
+     * Creates the view for the given state and attaches it hidden (unless inactive states are detached), unless it already exists or is in use
+     *
+     * @param state
+     */
+    private void prewarmState(int state) {
+        if (mRegistry.getView(state) != null || isStateInUse(state) || mRegistry.getProvider(state) == null) {
+            return;
+        }
+
+        View view = getStateView(state);
+
+        // Prewarming isn't part of any transition
+        mTrace.discardInflation(state);
+
+        if (view != null) {
+            // Otherwise it looks like the least recently used view, and is the first to be evicted
+            mRegistry.setLastUsed(state, ++mStateUseCounter);
+        }
+
+        if (view != null && view.getParent() == null && !mDetachInactiveStates) {
+            view.setVisibility(View.GONE);
+
+            ViewGroup.LayoutParams params = view.getLayoutParams();
+
+            if (params == null) {
+                params = generateDefaultLayoutParams();
+            }
+
+            // A GONE child doesn't affect layout, so there's no need to request one
+            addViewInLayout(view, -1, params, true);
+        }
+    }
+
+    /**
+     * Configures the view to be in the given state, hiding and showing internally maintained-views as needed
+     *
+     * @param state
+     * @deprecated
+     */
+    public void setState(final ContentState state) {
+        setContentState(state.nativeInt);
+    }
+
+    private View getStateView(int stateViewId) {
+        // Check if we have it cached first (we only need to create once per config)
+        View view = mRegistry.getView(stateViewId);
+
+        if (view == null) {
+            final boolean traced = mTrace.begin(StateTrace.OP_INFLATE, stateViewId);
+            final long start = traced ? System.nanoTime() : 0;
+
+            try {
+                // Not cached, pull from the provider
+                view = mRegistry.getProvider(stateViewId).onCreateStateView(getContext(), this, stateViewId);
+            } finally {
+                if (traced) {
+                    StateTrace.end();
+                    mTrace.onInflated(stateViewId, System.nanoTime() - start);
+                }
+            }
+
+            // And store in cache
+            cacheStateView(stateViewId, view);
+        }
+
+        return view;
+    }
+
+    /**
+     * Returns the given view corresponding to the specified {@link ContentState}
+     *
+     * @param state
+     * @return
+     */
+    public View getStateView(ContentState state) {
+        return getStateView(state.nativeInt);
+    }
+
+    /**
+     * Returns the view to be displayed for the case of a network error
+     *
+     * @return
+     */
+    public View getNetworkErrorView() {
+        if (mNetworkErrorView == null) {
+            mNetworkErrorView = bindErrorView(CONTENT_STATE_ID_ERROR_NETWORK,
+                    obtainStateView(CONTENT_STATE_ID_ERROR_NETWORK, mViewState.networkErrorLayoutResId));
+
+            mNetworkErrorView.setOnClickListener(mTapToRetryClickListener);
+        }
+
+        return mNetworkErrorView;
+    }
+
+    /**
+     * Returns the view to be displayed for the case of an unknown error
+     *
+     * @return
+     */
+    public View getGeneralErrorView() {
+        if (mGeneralErrorView == null) {
+            mGeneralErrorView = bindErrorView(CONTENT_STATE_ID_ERROR_GENERAL,
+                    obtainStateView(CONTENT_STATE_ID_ERROR_GENERAL, mViewState.generalErrorLayoutResId));
+
+            mGeneralErrorView.setOnClickListener(mTapToRetryClickListener);
+        }
+
+        return mGeneralErrorView;
+    }
+
+    /**
+     * Sets the title and tap-to-retry text of a built-in error view. Only touches the given view, so it's safe to call off the UI thread for a view
+     * that isn't attached yet.
+     *
+     * @param stateViewId
+     * @param view
+     * @return the given view
+     */
+    private View bindErrorView(int stateViewId, View view) {
+        mBuiltinProvider.getHolder(stateViewId, view).setTapToRetry(getTapToRetryString());
+        mBuiltinProvider.bind(stateViewId, view, getErrorTitle(stateViewId));
+
+        return view;
+    }
+
+    /**
+     * @param stateViewId
+     * @return the title shown by the built-in view of the given error state, or null if it isn't an error state
+     */
+    private String getErrorTitle(int stateViewId) {
+        switch (stateViewId) {
+            case CONTENT_STATE_ID_ERROR_NETWORK:
+                return getNetworkErrorTitleString();
+
+            case CONTENT_STATE_ID_ERROR_GENERAL:
+                return mViewState.customErrorString != null ? mViewState.customErrorString : getGeneralErrorTitleString();
+        }
+
+        return null;
+    }
+
+    /**
+     * Builds the loading view if not currently built, and returns the view
+     */
+    public View getLoadingView() {
+        if (mLoadingView == null) {
+            mLoadingView = obtainStateView(CONTENT_STATE_ID_LOADING, mViewState.loadingLayoutResId);
+        }
+
+        return mLoadingView;
+    }
+
+    /**
+     * Borrows a view for the given state from the {@link StateViewPool} (if one is set), falling back to inflating the given layout
+     *
+     * @param stateViewId
+     * @param layoutResId
+     * @return
+     */
+    private View obtainStateView(int stateViewId, int layoutResId) {
+        if (mStateViewPool != null) {
+            View view = mStateViewPool.getRecycledView(stateViewId, layoutResId);
+
+            if (view != null) {
+                return view;
+            }
+        }
+
+        return View.inflate(getContext(), layoutResId, null);
+    }
+
+    /**
+     * Sets a pool from which built-in state views (loading, network error, general error) are borrowed instead of inflated, and to which hidden
+     * built-in state views are returned when this view is detached from the window. Share a single pool across all of the MultiStateViews in a
+     * list to avoid inflating the same state layouts for every cell.
+     *
+     * @param pool the pool to use, or null to always inflate
+     */
+    public void setStateViewPool(StateViewPool pool) {
+        mStateViewPool = pool;
+    }
+
+    public StateViewPool getStateViewPool() {
+        return mStateViewPool;
+    }
+
+    /**
+     * Returns every hidden built-in state view to the {@link StateViewPool}, if one is set. The view for the current state is kept, as are views
+     * kept in layout by their hide policy.
+     */
+    private void recycleHiddenStateViews() {
+        if (mStateViewPool == null) {
+            return;
+        }
+
+        for (int state = CONTENT_STATE_ID_LOADING; state < MIN_CONTENT_STATE_ID; state++) {
+            if (isStateViewReleasable(state)) {
+                releaseStateView(state, true);
+            }
+        }
+    }
+
+    /**
+     * Drops every cached view that isn't currently displayed (or about to be, or still being hidden). Dropped views are recreated through their
+     * {@link StateViewProvider} the next time their state is requested; they aren't handed to the {@link StateViewPool}. The content view is never
+     * dropped, nor are views whose hide policy keeps them in layout (see {@link #setStateHidePolicy(int, int)}).
+     */
+    public void releaseHiddenStateViews() {
+        for (int i = mRegistry.size() - 1; i >= 0; i--) {
+            final int state = mRegistry.stateAt(i);
+
+            if (state != CONTENT_STATE_ID_CONTENT && isStateViewReleasable(state)) {
+                releaseStateView(state, false);
+            }
+        }
+    }
+
+    /**
+     * Frees what can be freed under memory pressure: hidden state views, and everything held by the {@link StateViewPool}
+     */
+    private void onTrimMemory() {
+        releaseHiddenStateViews();
+
+        if (mStateViewPool != null) {
+            mStateViewPool.clear();
+        }
     }
 
     /**
-     * Builds the loading view if not currently built, and returns the view
+     * Sets the maximum number of state views (not counting the content view) kept around while hidden. When a newly shown state would exceed it,
+     * the least recently shown hidden views are dropped and later recreated through their {@link StateViewProvider}. Defaults to 0 (unlimited).
+     *
+     * @param max
+     * @see R.attr#msvMaxCachedStateViews
      */
-    public View getLoadingView() {
-        if (mLoadingView == null) {
-            mLoadingView = View.inflate(getContext(), mViewState.loadingLayoutResId, null);
+    public void setMaxCachedStateViews(int max) {
+        mMaxCachedStateViews = max;
+        trimStateViewCache();
+    }
+
+    public int getMaxCachedStateViews() {
+        return mMaxCachedStateViews;
+    }
+
+    /**
+     * Drops the least recently shown hidden state views until we're within {@link #setMaxCachedStateViews(int)}. Views kept in layout by their
+     * hide policy are neither dropped nor counted.
+     */
+    private void trimStateViewCache() {
+        if (mMaxCachedStateViews <= 0) {
+            return;
         }
 
-        return mLoadingView;
+        while (true) {
+            int cached = 0;
+            int eldestState = 0;
+            long eldestUse = Long.MAX_VALUE;
+
+            for (int i = mRegistry.size() - 1; i >= 0; i--) {
+                final int state = mRegistry.stateAt(i);
+
+                if (state == CONTENT_STATE_ID_CONTENT || mRegistry.getView(state) == null
+                        || mRegistry.getHidePolicy(state) != HIDE_POLICY_GONE) {
+                    continue;
+                }
+
+                cached++;
+
+                if (!isStateInUse(state) && mRegistry.getLastUsed(state) < eldestUse) {
+                    eldestUse = mRegistry.getLastUsed(state);
+                    eldestState = state;
+                }
+            }
+
+            if (cached <= mMaxCachedStateViews || eldestUse == Long.MAX_VALUE) {
+                return;
+            }
+
+            releaseStateView(eldestState, true);
+        }
+    }
+
+    /**
+     * @param stateViewId
+     * @return true if the given state is either displayed or about to be displayed, or its view is still on its way out (its MESSAGE_HIDE is
+     * pending, or it's fading out)
+     */
+    private boolean isStateInUse(int stateViewId) {
+        if (stateViewId == mStateMachine.getState() || stateViewId == mStateMachine.getDisplayedState()) {
+            return true;
+        }
+
+        if (mHandler.hasMessages(messageWhat(MultiStateHandler.MESSAGE_HIDE, stateViewId))) {
+            return true;
+        }
+
+        final View view = mRegistry.getView(stateViewId);
+        return view != null && view.getTag(R.id.msv__state_transition) != null;
+    }
+
+    /**
+     * @param stateViewId
+     * @return true if the view of the given state may be dropped: it isn't in use, and its hide policy doesn't keep it in layout while hidden
+     * (dropping an invisible or overlaid view would lose exactly the layout, scroll position or on-screen presence it was kept for)
+     */
+    private boolean isStateViewReleasable(int stateViewId) {
+        return mRegistry.getHidePolicy(stateViewId) == HIDE_POLICY_GONE && !isStateInUse(stateViewId);
+    }
+
+    /**
+     * Forgets the view for the given state, removing it from this view and, if asked to, handing it to the {@link StateViewPool} when it's a
+     * built-in view
+     *
+     * @param stateViewId
+     * @param recycle false to drop the view entirely
+     */
+    private void releaseStateView(int stateViewId, boolean recycle) {
+        View view = mRegistry.getView(stateViewId);
+        int layoutResId = 0;
+
+        if (mRegistry.getProvider(stateViewId) == mBuiltinProvider) {
+            switch (stateViewId) {
+                case CONTENT_STATE_ID_LOADING:
+                    view = mLoadingView;
+                    mLoadingView = null;
+                    layoutResId = mViewState.loadingLayoutResId;
+                    break;
+
+                case CONTENT_STATE_ID_ERROR_NETWORK:
+                    view = mNetworkErrorView;
+                    mNetworkErrorView = null;
+                    layoutResId = mViewState.networkErrorLayoutResId;
+                    break;
+
+                case CONTENT_STATE_ID_ERROR_GENERAL:
+                    view = mGeneralErrorView;
+                    mGeneralErrorView = null;
+                    layoutResId = mViewState.generalErrorLayoutResId;
+                    break;
+            }
+        }
+
+        if (view == null) {
+            return;
+        }
+
+        mRegistry.setView(stateViewId, null);
+        view.setTag(R.id.msv__state_view_owner, null);
+
+        if (view.getParent() == this) {
+            removeView(view);
+        }
+
+        if (recycle && mStateViewPool != null && layoutResId != 0) {
+            // Don't hold on to this instance's listener while pooled; it's restored when the view is borrowed again
+            view.setOnClickListener(null);
+            view.setVisibility(View.GONE);
+            mStateViewPool.putRecycledView(stateViewId, layoutResId, view);
+        }
+    }
+
+    /**
+     * Starts listening for memory pressure, so that hidden state views can be dropped when the system is running low. One callback, registered
+     * with the application the first time any instance is attached, serves every instance; attaching and detaching only adds to and removes
+     * from a weak set.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void registerMemoryCallbacks() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+
+        if (sMemoryCallbacks == null) {
+            sMemoryCallbacks = new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                        trimMemory();
+                    }
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    trimMemory();
+                }
+            };
+
+            sMemoryCallbackViews = new WeakHashMap<MultiStateView, Boolean>();
+            getContext().getApplicationContext().registerComponentCallbacks((ComponentCallbacks2) sMemoryCallbacks);
+        }
+
+        sMemoryCallbackViews.put(this, Boolean.TRUE);
+    }
+
+    private void unregisterMemoryCallbacks() {
+        if (sMemoryCallbackViews != null) {
+            sMemoryCallbackViews.remove(this);
+        }
+    }
+
+    /**
+     * Frees memory in every attached instance
+     */
+    private static void trimMemory() {
+        // Copied, since releasing views may detach other instances nested in them
+        final ArrayList<MultiStateView> views = new ArrayList<MultiStateView>(sMemoryCallbackViews.keySet());
+
+        for (int i = 0, size = views.size(); i < size; i++) {
+            views.get(i).onTrimMemory();
+        }
     }
 
     @SuppressWarnings("unused")
@@ -402,12 +1944,13 @@ public class MultiStateView extends FrameLayout {
      *
      * @param contentView
      */
-    private void addContentView(View contentView) {
+    private void addContentView(View contentView, ViewGroup.LayoutParams params) {
         if (mContentView != null && mContentView != contentView) {
             throw new IllegalStateException("Can't add more than one content view to MultiStateView");
         }
 
         setContentView(contentView);
+        applyDeclaredHidePolicy(CONTENT_STATE_ID_CONTENT, params != null ? params : contentView.getLayoutParams());
     }
 
     /**
@@ -428,16 +1971,19 @@ public class MultiStateView extends FrameLayout {
     }
 
     private boolean isViewInternal(View view) {
-        return mStateViewCache.indexOfValue(view) >= 0;
+        return view.getTag(R.id.msv__state_view_owner) == this;
     }
 
     @Override
     protected Parcelable onSaveInstanceState() {
         Parcelable state = super.onSaveInstanceState();
 
+        // The content state is always saved, even when it's the XML default: the app may have changed it again before the state is restored
         SavedState myState = new SavedState(state);
 
-        myState.state = mViewState;
+        myState.state = new MultiStateViewData(mViewState);
+        myState.state.state = mStateMachine.getState();
+        myState.changedFields = SavedState.getChangedFields(mViewState, mDefaultViewState);
 
         return myState;
     }
@@ -449,87 +1995,449 @@ public class MultiStateView extends FrameLayout {
             return;
         }
 
-        SavedState myState = (SavedState) state;
+        SavedState myState = (SavedState) state;
+
+        setViewState(myState.state, myState.changedFields);
+
+        super.onRestoreInstanceState(myState.getSuperState());
+    }
+
+    /**
+     * Restores the given state; fields not flagged in changedFields are left at the values parsed from XML
+     *
+     * @param state
+     * @param changedFields bitmask of SavedState.FIELD_* values
+     */
+    private void setViewState(MultiStateViewData state, int changedFields) {
+        if ((changedFields & SavedState.FIELD_TAP_TO_RETRY) != 0) {
+            setTapToRetryString(state.tapToRetryString);
+        }
+
+        if ((changedFields & SavedState.FIELD_GENERAL_ERROR_TITLE) != 0) {
+            setGeneralErrorTitleString(state.generalErrorTitleString);
+        }
+
+        if ((changedFields & SavedState.FIELD_NETWORK_ERROR_TITLE) != 0) {
+            setNetworkErrorTitleString(state.networkErrorTitleString);
+        }
+
+        if ((changedFields & SavedState.FIELD_GENERAL_ERROR_LAYOUT) != 0) {
+            setGeneralErrorLayoutResourceId(state.generalErrorLayoutResId);
+        }
+
+        if ((changedFields & SavedState.FIELD_NETWORK_ERROR_LAYOUT) != 0) {
+            setNetworkErrorLayoutResourceId(state.networkErrorLayoutResId);
+        }
+
+        if ((changedFields & SavedState.FIELD_LOADING_LAYOUT) != 0) {
+            setLoadingLayoutResourceId(state.loadingLayoutResId);
+        }
+
+        if ((changedFields & SavedState.FIELD_CUSTOM_ERROR) != 0) {
+            setCustomErrorString(state.customErrorString);
+        }
+
+        setContentState(state.state);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Prefer the AttachInfo handler on attach:
+        getMainHandler().removeCallbacks(mRecycleStateViewsRunnable);
+        mHandler = new MultiStateHandler(getHandler().getLooper());
+        schedulePrewarm();
+        registerMemoryCallbacks();
+
+        if (mLoadingDrawable != null) {
+            updateLoadingDrawableAnimation(true);
+        }
+
+        if (mLoadingSkeleton != null) {
+            updateLoadingSkeletonAnimation(true);
+        }
+
+        mStateMachine.onAttached();
+
+        if (mRetryInflationState != StateMachine.NO_STATE) {
+            retryInflation();
+        }
+
+        if (mStateSource != null) {
+            startObservingStateSource();
+        }
+    }
+
+    /**
+     * Inflates again the view that failed to inflate while we were detached, if its state is still the one to show
+     */
+    private void retryInflation() {
+        final int state = mRetryInflationState;
+        mRetryInflationState = StateMachine.NO_STATE;
+
+        if (state == mStateMachine.getState() && state != mStateMachine.getDisplayedState() && mPendingInflation == null) {
+            applyContentStateNow(state, false);
+        }
+    }
+
+    private void removePendingHideMessages() {
+        for (int i = 0, size = mRegistry.size(); i < size; i++) {
+            mHandler.removeMessages(messageWhat(MultiStateHandler.MESSAGE_HIDE, mRegistry.stateAt(i)));
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removePendingHideMessages();
+        // Don't keep a detached view alive from the idle queue; prewarming resumes once we're attached again
+        unschedulePrewarm();
+        unregisterMemoryCallbacks();
+        finishStateTransitions();
+
+        if (mStateSource != null) {
+            stopObservingStateSource();
+        }
+
+        if (mLoadingDrawable != null) {
+            updateLoadingDrawableAnimation(false);
+        }
+
+        if (mLoadingSkeleton != null) {
+            updateLoadingSkeletonAnimation(false);
+        }
+        // Reset it to a default looper
+        mHandler = new MultiStateHandler();
+
+        if (mStateViewPool != null) {
+            // Children are still being detached at this point; hand them back to the pool once that's finished
+            getMainHandler().post(mRecycleStateViewsRunnable);
+        }
+
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void addView(View child) {
+        if (registerStateViewStub(child, null)) {
+            return;
+        }
+
+        if (!isViewInternal(child)) {
+            addContentView(child, null);
+        }
+
+        super.addView(child);
+    }
+
+    @Override
+    public void addView(View child, int index) {
+        if (registerStateViewStub(child, null)) {
+            return;
+        }
+
+        if (!isViewInternal(child)) {
+            addContentView(child, null);
+        }
+
+        super.addView(child, index);
+    }
+
+    @Override
+    public void addView(View child, int index, android.view.ViewGroup.LayoutParams params) {
+        if (registerStateViewStub(child, params)) {
+            return;
+        }
+
+        if (!isViewInternal(child)) {
+            addContentView(child, params);
+        }
+
+        super.addView(child, index, params);
+    }
+
+    @Override
+    public void addView(View child, int width, int height) {
+        if (registerStateViewStub(child, null)) {
+            return;
+        }
+
+        if (!isViewInternal(child)) {
+            addContentView(child, null);
+        }
+
+        super.addView(child, width, height);
+    }
+
+    @Override
+    public void addView(View child, android.view.ViewGroup.LayoutParams params) {
+        if (registerStateViewStub(child, params)) {
+            return;
+        }
+
+        if (!isViewInternal(child)) {
+            addContentView(child, params);
+        }
+
+        super.addView(child, params);
+    }
+
+    /**
+     * @return the view of the displayed state, or null if it has none
+     */
+    private View getDisplayedStateView() {
+        final int displayedState = mStateMachine.getDisplayedState();
+        View view = mRegistry.getView(displayedState);
+
+        if (view == null && displayedState == CONTENT_STATE_ID_CONTENT) {
+            view = mContentView;
+        }
+
+        return view;
+    }
+
+    /**
+     * Measures only the view of the displayed state, rather than every non-GONE child (a previous state can still be visible while its
+     * MESSAGE_HIDE is pending). Falls back to {@link FrameLayout}'s measurement while the displayed state has no visible view, or while some
+     * state's hide policy keeps its view in layout underneath (re-measuring those is cheap: their specs rarely change, and {@link View#measure(int,
+     * int)} skips them when they don't).
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final View child = getDisplayedStateView();
+
+        if (child == null || child.getVisibility() == View.GONE || child.getParent() != this || mRegistry.hasRetainedStates()) {
+            mMeasuredChild = null;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
+        mMeasuredChild = child;
+
+        // View.measure() already skips the child when its specs are unchanged and it hasn't asked for a layout
+        measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, 0);
+
+        final FrameLayout.LayoutParams lp = (FrameLayout.LayoutParams) child.getLayoutParams();
+        final Rect padding = getPaddingWithForeground();
+        final int horizontalPadding = padding.left + padding.right;
+        final int verticalPadding = padding.top + padding.bottom;
+
+        int width = Math.max(child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin + horizontalPadding, getSuggestedMinimumWidth());
+        int height = Math.max(child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin + verticalPadding, getSuggestedMinimumHeight());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            setMeasuredDimensionAndState(width, height, widthMeasureSpec, heightMeasureSpec, child);
+        } else {
+            setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+        }
+
+        final boolean matchWidth = lp.width == LayoutParams.MATCH_PARENT && MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY;
+        final boolean matchHeight = lp.height == LayoutParams.MATCH_PARENT && MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.EXACTLY;
+
+        if (matchWidth || matchHeight) {
+            // Like FrameLayout, match_parent children are re-measured against our final size
+            final int childWidthMeasureSpec = matchWidth
+                    ? MeasureSpec.makeMeasureSpec(getMeasuredWidth() - horizontalPadding - lp.leftMargin - lp.rightMargin, MeasureSpec.EXACTLY)
+                    : getChildMeasureSpec(widthMeasureSpec, horizontalPadding + lp.leftMargin + lp.rightMargin, lp.width);
+            final int childHeightMeasureSpec = matchHeight
+                    ? MeasureSpec.makeMeasureSpec(getMeasuredHeight() - verticalPadding - lp.topMargin - lp.bottomMargin, MeasureSpec.EXACTLY)
+                    : getChildMeasureSpec(heightMeasureSpec, verticalPadding + lp.topMargin + lp.bottomMargin, lp.height);
+
+            child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+        }
+    }
+
+    /**
+     * Keeps the child's MEASURED_STATE_TOO_SMALL bits, like FrameLayout does
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void setMeasuredDimensionAndState(int width, int height, int widthMeasureSpec, int heightMeasureSpec, View child) {
+        final int childState = child.getMeasuredState();
+
+        setMeasuredDimension(resolveSizeAndState(width, widthMeasureSpec, childState),
+                resolveSizeAndState(height, heightMeasureSpec, childState << MEASURED_HEIGHT_STATE_SHIFT));
+    }
+
+    /**
+     * @return this view's padding, widened to the foreground drawable's padding the way FrameLayout does by default (foregroundInsidePadding);
+     * shared, so don't hold on to it
+     */
+    private Rect getPaddingWithForeground() {
+        mTmpPadding.set(getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom());
+
+        final Drawable foreground = getForeground();
+
+        if (foreground != null && foreground.getPadding(mTmpForegroundPadding)) {
+            mTmpPadding.left = Math.max(mTmpPadding.left, mTmpForegroundPadding.left);
+            mTmpPadding.top = Math.max(mTmpPadding.top, mTmpForegroundPadding.top);
+            mTmpPadding.right = Math.max(mTmpPadding.right, mTmpForegroundPadding.right);
+            mTmpPadding.bottom = Math.max(mTmpPadding.bottom, mTmpForegroundPadding.bottom);
+        }
+
+        return mTmpPadding;
+    }
+
+    /**
+     * Lays out only the view of the displayed state; see {@link #onMeasure(int, int)}
+     */
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        final View child = getDisplayedStateView();
+
+        if (child == null || child.getVisibility() == View.GONE || child.getParent() != this || mMeasuredChild != child) {
+            super.onLayout(changed, left, top, right, bottom);
+            return;
+        }
+
+        final FrameLayout.LayoutParams lp = (FrameLayout.LayoutParams) child.getLayoutParams();
+        final Rect padding = getPaddingWithForeground();
+        int gravity = lp.gravity;
+
+        if (gravity == -1) {
+            gravity = Gravity.TOP | Gravity.LEFT;
+        }
+
+        mTmpContainerRect.set(padding.left + lp.leftMargin, padding.top + lp.topMargin, right - left - padding.right - lp.rightMargin,
+                bottom - top - padding.bottom - lp.bottomMargin);
 
-        setViewState(myState.state);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            applyGravityRelative(gravity, child);
+        } else {
+            Gravity.apply(gravity, child.getMeasuredWidth(), child.getMeasuredHeight(), mTmpContainerRect, mTmpChildRect);
+        }
 
-        super.onRestoreInstanceState(myState.getSuperState());
+        child.layout(mTmpChildRect.left, mTmpChildRect.top, mTmpChildRect.right, mTmpChildRect.bottom);
     }
 
-    private void setViewState(MultiStateViewData state) {
-        setContentState(state.state);
-        setTapToRetryString(state.tapToRetryString);
-        setGeneralErrorTitleString(state.generalErrorTitleString);
-        setNetworkErrorTitleString(state.networkErrorTitleString);
-        setGeneralErrorLayoutResourceId(state.generalErrorLayoutResId);
-        setNetworkErrorLayoutResourceId(state.networkErrorLayoutResId);
-        setLoadingLayoutResourceId(state.loadingLayoutResId);
-        setCustomErrorString(state.customErrorString);
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private void applyGravityRelative(int gravity, View child) {
+        Gravity.apply(gravity, child.getMeasuredWidth(), child.getMeasuredHeight(), mTmpContainerRect, mTmpChildRect, getLayoutDirection());
     }
 
-    @Override
-    protected void onAttachedToWindow() {
-        super.onAttachedToWindow();
-        // Prefer the AttachInfo handler on attach:
-        mHandler = new MultiStateHandler(getHandler().getLooper());
+    /**
+     * Registers a {@link ViewStub} child that declares a state (see {@link R.attr#layout_msvState}) as the provider for that state, instead of adding
+     * it as a child. The stub's layout is only inflated the first time its state is requested.
+     *
+     * @param child
+     * @param params the params the child is being added with, if any
+     * @return true if the child was a state view stub, and must not be added
+     */
+    private boolean registerStateViewStub(View child, ViewGroup.LayoutParams params) {
+        if (!(child instanceof ViewStub)) {
+            return false;
+        }
 
-        if (mPendingState != -1) {
-            setContentState(mPendingState);
-            mPendingState = -1;
+        if (params == null) {
+            params = child.getLayoutParams();
         }
-    }
 
-    @Override
-    protected void onDetachedFromWindow() {
-        mHandler.removeMessages(MultiStateHandler.MESSAGE_HIDE);
-        // Reset it to a default looper
-        mHandler = new MultiStateHandler();
-        super.onDetachedFromWindow();
-    }
+        if (!(params instanceof LayoutParams) || ((LayoutParams) params).state == LayoutParams.NO_STATE) {
+            return false;
+        }
 
-    @Override
-    public void addView(View child) {
-        if (!isViewInternal(child)) {
-            addContentView(child);
+        final int state = ((LayoutParams) params).state;
+
+        if (state == CONTENT_STATE_ID_CONTENT) {
+            throw new IllegalArgumentException("The content state can't be declared with a ViewStub");
         }
 
-        super.addView(child);
+        registerStateViewProvider(state, new ViewStubStateViewProvider((ViewStub) child, params));
+        return true;
     }
 
     @Override
-    public void addView(View child, int index) {
-        if (!isViewInternal(child)) {
-            addContentView(child);
+    public FrameLayout.LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    /**
+     * Per-child layout information for MultiStateView; adds the state declared by a {@link ViewStub} child, and the hide policy of a state's view
+     *
+     * @see R.attr#layout_msvState
+     * @see R.attr#layout_msvHidePolicy
+     */
+    public static class LayoutParams extends FrameLayout.LayoutParams {
+        /**
+         * Value of {@link #state} for children that don't declare a state
+         */
+        public static final int NO_STATE = -1;
+
+        /**
+         * The state whose view is inflated from this (ViewStub) child, or {@link #NO_STATE}
+         */
+        public int state = NO_STATE;
+
+        /**
+         * Value of {@link #hidePolicy} for children that don't declare a hide policy
+         */
+        public static final int NO_HIDE_POLICY = -1;
+
+        /**
+         * How the view of this child's state is hidden (see {@link MultiStateView#setStateHidePolicy(int, int)}), or {@link #NO_HIDE_POLICY}
+         */
+        public int hidePolicy = NO_HIDE_POLICY;
+
+        public LayoutParams(Context c, AttributeSet attrs) {
+            super(c, attrs);
+
+            TypedArray a = c.obtainStyledAttributes(attrs, R.styleable.MultiStateView_Layout);
+            state = a.getInt(R.styleable.MultiStateView_Layout_layout_msvState, NO_STATE);
+            hidePolicy = a.getInt(R.styleable.MultiStateView_Layout_layout_msvHidePolicy, NO_HIDE_POLICY);
+            a.recycle();
         }
 
-        super.addView(child, index);
-    }
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
 
-    @Override
-    public void addView(View child, int index, android.view.ViewGroup.LayoutParams params) {
-        if (!isViewInternal(child)) {
-            addContentView(child);
+        public LayoutParams(int width, int height, int gravity) {
+            super(width, height, gravity);
         }
 
-        super.addView(child, index, params);
+        public LayoutParams(ViewGroup.LayoutParams source) {
+            super(source);
+        }
+
+        public LayoutParams(ViewGroup.MarginLayoutParams source) {
+            super(source);
+        }
     }
 
-    @Override
-    public void addView(View child, int width, int height) {
-        if (!isViewInternal(child)) {
-            addContentView(child);
+    /**
+     * Provides the view for a state declared as a {@link ViewStub} child, inflating the stub's layout the same way {@link ViewStub#inflate()} would
+     */
+    private static class ViewStubStateViewProvider implements StateViewProvider<View> {
+        private final int mLayoutResource;
+
+        private final int mInflatedId;
+
+        private final ViewGroup.LayoutParams mLayoutParams;
+
+        ViewStubStateViewProvider(ViewStub stub, ViewGroup.LayoutParams params) {
+            mLayoutResource = stub.getLayoutResource();
+            mInflatedId = stub.getInflatedId();
+            mLayoutParams = params;
         }
 
-        super.addView(child, width, height);
-    }
+        @Override
+        public View onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+            if (mLayoutResource == 0) {
+                throw new IllegalArgumentException("ViewStub for state " + stateViewId + " must have a valid layoutResource");
+            }
 
-    @Override
-    public void addView(View child, android.view.ViewGroup.LayoutParams params) {
-        if (!isViewInternal(child)) {
-            addContentView(child);
+            View view = LayoutInflater.from(context).inflate(mLayoutResource, container, false);
+
+            if (mInflatedId != View.NO_ID) {
+                view.setId(mInflatedId);
+            }
+
+            view.setLayoutParams(mLayoutParams);
+
+            return view;
         }
 
-        super.addView(child, params);
+        @Override
+        public void onBeforeViewShown(int stateViewId, View view) {
+        }
     }
 
     /**
@@ -586,22 +2494,142 @@ public class MultiStateView extends FrameLayout {
         }
     }
 
+    /**
+     * Saved state of a MultiStateView. Only the fields that differ from the values parsed from XML (and the theme) are parceled: the parcel holds the
+     * content state, a bitmask of the changed fields, then just those fields.
+     */
     public static class SavedState extends View.BaseSavedState {
+        static final int FIELD_CUSTOM_ERROR = 1;
+
+        static final int FIELD_LOADING_LAYOUT = 1 << 1;
+
+        static final int FIELD_GENERAL_ERROR_LAYOUT = 1 << 2;
+
+        static final int FIELD_NETWORK_ERROR_LAYOUT = 1 << 3;
+
+        static final int FIELD_NETWORK_ERROR_TITLE = 1 << 4;
+
+        static final int FIELD_GENERAL_ERROR_TITLE = 1 << 5;
+
+        static final int FIELD_TAP_TO_RETRY = 1 << 6;
+
         MultiStateViewData state;
 
+        /**
+         * Bitmask of the FIELD_* values present in {@link #state}
+         */
+        int changedFields;
+
         public SavedState(Parcelable superState) {
             super(superState);
         }
 
         private SavedState(Parcel in) {
             super(in);
-            state = (MultiStateViewData) in.readParcelable(MultiStateViewData.class.getClassLoader());
+            state = new MultiStateViewData(in.readInt());
+            changedFields = in.readInt();
+
+            if ((changedFields & FIELD_CUSTOM_ERROR) != 0) {
+                state.customErrorString = in.readString();
+            }
+
+            if ((changedFields & FIELD_LOADING_LAYOUT) != 0) {
+                state.loadingLayoutResId = in.readInt();
+            }
+
+            if ((changedFields & FIELD_GENERAL_ERROR_LAYOUT) != 0) {
+                state.generalErrorLayoutResId = in.readInt();
+            }
+
+            if ((changedFields & FIELD_NETWORK_ERROR_LAYOUT) != 0) {
+                state.networkErrorLayoutResId = in.readInt();
+            }
+
+            if ((changedFields & FIELD_NETWORK_ERROR_TITLE) != 0) {
+                state.networkErrorTitleString = in.readString();
+            }
+
+            if ((changedFields & FIELD_GENERAL_ERROR_TITLE) != 0) {
+                state.generalErrorTitleString = in.readString();
+            }
+
+            if ((changedFields & FIELD_TAP_TO_RETRY) != 0) {
+                state.tapToRetryString = in.readString();
+            }
         }
 
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
-            out.writeParcelable(state, flags);
+            out.writeInt(state.state);
+            out.writeInt(changedFields);
+
+            if ((changedFields & FIELD_CUSTOM_ERROR) != 0) {
+                out.writeString(state.customErrorString);
+            }
+
+            if ((changedFields & FIELD_LOADING_LAYOUT) != 0) {
+                out.writeInt(state.loadingLayoutResId);
+            }
+
+            if ((changedFields & FIELD_GENERAL_ERROR_LAYOUT) != 0) {
+                out.writeInt(state.generalErrorLayoutResId);
+            }
+
+            if ((changedFields & FIELD_NETWORK_ERROR_LAYOUT) != 0) {
+                out.writeInt(state.networkErrorLayoutResId);
+            }
+
+            if ((changedFields & FIELD_NETWORK_ERROR_TITLE) != 0) {
+                out.writeString(state.networkErrorTitleString);
+            }
+
+            if ((changedFields & FIELD_GENERAL_ERROR_TITLE) != 0) {
+                out.writeString(state.generalErrorTitleString);
+            }
+
+            if ((changedFields & FIELD_TAP_TO_RETRY) != 0) {
+                out.writeString(state.tapToRetryString);
+            }
+        }
+
+        /**
+         * @param state
+         * @param defaults
+         * @return a bitmask of the FIELD_* values that differ between the given state and defaults
+         */
+        static int getChangedFields(MultiStateViewData state, MultiStateViewData defaults) {
+            int changed = 0;
+
+            if (!TextUtils.equals(state.customErrorString, defaults.customErrorString)) {
+                changed |= FIELD_CUSTOM_ERROR;
+            }
+
+            if (state.loadingLayoutResId != defaults.loadingLayoutResId) {
+                changed |= FIELD_LOADING_LAYOUT;
+            }
+
+            if (state.generalErrorLayoutResId != defaults.generalErrorLayoutResId) {
+                changed |= FIELD_GENERAL_ERROR_LAYOUT;
+            }
+
+            if (state.networkErrorLayoutResId != defaults.networkErrorLayoutResId) {
+                changed |= FIELD_NETWORK_ERROR_LAYOUT;
+            }
+
+            if (!TextUtils.equals(state.networkErrorTitleString, defaults.networkErrorTitleString)) {
+                changed |= FIELD_NETWORK_ERROR_TITLE;
+            }
+
+            if (!TextUtils.equals(state.generalErrorTitleString, defaults.generalErrorTitleString)) {
+                changed |= FIELD_GENERAL_ERROR_TITLE;
+            }
+
+            if (!TextUtils.equals(state.tapToRetryString, defaults.tapToRetryString)) {
+                changed |= FIELD_TAP_TO_RETRY;
+            }
+
+            return changed;
         }
 
         public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
@@ -636,6 +2664,17 @@ public class MultiStateView extends FrameLayout {
             state = contentState;
         }
 
+        MultiStateViewData(MultiStateViewData source) {
+            customErrorString = source.customErrorString;
+            loadingLayoutResId = source.loadingLayoutResId;
+            generalErrorLayoutResId = source.generalErrorLayoutResId;
+            networkErrorLayoutResId = source.networkErrorLayoutResId;
+            networkErrorTitleString = source.networkErrorTitleString;
+            generalErrorTitleString = source.generalErrorTitleString;
+            tapToRetryString = source.tapToRetryString;
+            state = source.state;
+        }
+
         private MultiStateViewData(Parcel in) {
             customErrorString = in.readString();
             loadingLayoutResId = in.readInt();
@@ -674,7 +2713,253 @@ public class MultiStateView extends FrameLayout {
     }
 
     /**
-     * Handler used to hide the previous state when switching to a new state
+     * The child views of a built-in error view, looked up once. Text is only set when it actually changes, since every {@link
+     * TextView#setText(CharSequence)} may request a layout.
+     */
+    private static final class ErrorViewHolder {
+        private final TextView mTitle;
+
+        private final TextView mTapToRetry;
+
+        private String mTapToRetryText;
+
+        ErrorViewHolder(View view) {
+            mTitle = (TextView) view.findViewById(R.id.error_title);
+            mTapToRetry = (TextView) view.findViewById(R.id.tap_to_retry);
+        }
+
+        void setTitle(String title) {
+            if (mTitle != null) {
+                mTitle.setText(title);
+            }
+        }
+
+        void setTapToRetry(String text) {
+            if (mTapToRetry != null && !TextUtils.equals(text, mTapToRetryText)) {
+                mTapToRetryText = text;
+                mTapToRetry.setText(text);
+            }
+        }
+    }
+
+    /**
+     * Fades a single state view in or out (see {@link #setStateTransitionDuration(long)}). The running transition of a view is kept in its {@link
+     * R.id#msv__state_transition} tag, so that it can be interrupted by the next one.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+    private class StateTransition extends AnimatorListenerAdapter {
+        private final View mView;
+
+        private final int mVisibility;
+
+        private boolean mCanceled;
+
+        private boolean mLayerAdded;
+
+        StateTransition(View view, int visibility) {
+            mView = view;
+            mVisibility = visibility;
+        }
+
+        void start() {
+            final StateTransition running = (StateTransition) mView.getTag(R.id.msv__state_transition);
+
+            if (running != null) {
+                // Continue from wherever the running fade got to
+                running.interrupt();
+            }
+
+            if (mVisibility == View.VISIBLE) {
+                if (mView.getVisibility() != View.VISIBLE) {
+                    mView.setAlpha(0f);
+                    applyStateViewVisibility(mView, View.VISIBLE);
+                }
+            } else if (mView.getVisibility() != View.VISIBLE) {
+                // Nothing to fade out
+                mView.setAlpha(1f);
+                applyStateViewVisibility(mView, mVisibility);
+                return;
+            }
+
+            mView.setTag(R.id.msv__state_transition, this);
+            mView.animate().alpha(mVisibility == View.VISIBLE ? 1f : 0f).setDuration(mStateTransitionDuration).setListener(this);
+        }
+
+        /**
+         * Stops this transition where it is
+         */
+        void interrupt() {
+            mCanceled = true;
+            mView.animate().cancel();
+            release();
+        }
+
+        /**
+         * Stops this transition and jumps to its end state
+         */
+        void finish() {
+            interrupt();
+            mView.setAlpha(1f);
+            applyStateViewVisibility(mView, mVisibility);
+        }
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+            if (mView.isHardwareAccelerated() && mView.getLayerType() == View.LAYER_TYPE_NONE) {
+                mLayerAdded = true;
+                mView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+            }
+        }
+
+        @Override
+        public void onAnimationCancel(Animator animation) {
+            mCanceled = true;
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            release();
+
+            if (!mCanceled && mVisibility != View.VISIBLE) {
+                mView.setAlpha(1f);
+                applyStateViewVisibility(mView, mVisibility);
+            }
+        }
+
+        /**
+         * Drops the layer, the listener and the tag, unless a newer transition owns them
+         */
+        private void release() {
+            if (mLayerAdded) {
+                mLayerAdded = false;
+                mView.setLayerType(View.LAYER_TYPE_NONE, null);
+            }
+
+            if (mView.getTag(R.id.msv__state_transition) == this) {
+                mView.setTag(R.id.msv__state_transition, null);
+                mView.animate().setListener(null);
+            }
+        }
+    }
+
+    /**
+     * Inflates the view for a single state on the inflation executor, then shows it on the UI thread unless it has been cancelled in the meantime
+     */
+    private class PendingInflation implements Runnable {
+        final int state;
+
+        volatile boolean cancelled;
+
+        private View mView;
+
+        private RuntimeException mError;
+
+        /**
+         * Trace section label, looked up on the UI thread; null when not tracing
+         */
+        private final String mTraceLabel;
+
+        private long mInflationNanos;
+
+        private final StateViewProvider mProvider;
+
+        private final int mLayoutResId;
+
+        private final Runnable mDeliver = new Runnable() {
+            @Override
+            public void run() {
+                if (cancelled) {
+                    // Nobody will see the view, so a failure to create it doesn't matter either
+                    return;
+                }
+
+                mPendingInflation = null;
+
+                if (mError != null) {
+                    if (getWindowToken() == null) {
+                        // Nobody will see it until we're attached again, and by then it may no longer be wanted; try again then
+                        mRetryInflationState = state;
+                        return;
+                    }
+
+                    // Fail the same way a synchronous inflation would have
+                    throw mError;
+                }
+
+                if (mTraceLabel != null) {
+                    mTrace.onInflated(state, mInflationNanos);
+                }
+
+                if (mProvider == mBuiltinProvider && mView != null
+                        && (state == CONTENT_STATE_ID_ERROR_NETWORK || state == CONTENT_STATE_ID_ERROR_GENERAL)) {
+                    bindErrorView(state, mView);
+                }
+
+                onStateViewCreated(state, mView);
+                showStateView(state, false);
+            }
+        };
+
+        PendingInflation(int state) {
+            this.state = state;
+            // Resolved here, on the UI thread: the registry and view state may be reallocated or copied there while we inflate
+            mProvider = mRegistry.getProvider(state);
+            mLayoutResId = getBuiltinLayoutResId(state);
+            mTraceLabel = StateTrace.isEnabled() ? mTrace.getLabel(StateTrace.OP_INFLATE, state) : null;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            final long start = System.nanoTime();
+
+            if (mTraceLabel != null) {
+                StateTrace.begin(mTraceLabel);
+            }
+
+            try {
+                mView = createStateViewInBackground(mProvider, mLayoutResId, state);
+            } catch (RuntimeException e) {
+                mError = e;
+            } finally {
+                if (mTraceLabel != null) {
+                    StateTrace.end();
+                }
+            }
+
+            mInflationNanos = System.nanoTime() - start;
+
+            getMainHandler().post(mDeliver);
+        }
+    }
+
+    static Handler getMainHandler() {
+        synchronized (MultiStateView.class) {
+            if (sMainHandler == null) {
+                sMainHandler = new Handler(Looper.getMainLooper());
+            }
+
+            return sMainHandler;
+        }
+    }
+
+    /**
+     * Packs a {@link MultiStateHandler} operation into the low bit and the state id into the remaining bits. State ids must fit in 31 bits (signed).
+     *
+     * @param message {@link MultiStateHandler#MESSAGE_HIDE} or {@link MultiStateHandler#MESSAGE_SHOW}
+     * @param state
+     * @return
+     */
+    private static int messageWhat(int message, int state) {
+        return (state << 1) | message;
+    }
+
+    /**
+     * Handler used to hide the previous state when switching to a new state. Both the operation and the state id are packed into {@link
+     * Message#what}, so posting and cancelling a message for a given state never allocates and never depends on boxed-integer identity.
      *
      * @author jhansche
      */
@@ -693,11 +2978,10 @@ public class MultiStateView extends FrameLayout {
 
         @Override
         public void handleMessage(Message msg) {
-            int state = (Integer) msg.obj;
-            View view = getStateView(state);
+            int state = msg.what >> 1;
             int visibility = View.VISIBLE;
 
-            switch (msg.what) {
+            switch (msg.what & 1) {
                 case MESSAGE_HIDE:
                     visibility = View.GONE;
                     break;
@@ -706,8 +2990,10 @@ public class MultiStateView extends FrameLayout {
                     break;
             }
 
-            if (view != null) {
-                view.setVisibility(visibility);
+            setStateViewVisibility(state, visibility);
+
+            if (visibility == View.VISIBLE) {
+                onStateShown(state);
             }
         }
     }
@@ -0,0 +1,51 @@
+package com.meetme.android.multistateview;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link StateSource} whose state is set directly. Must be used from the UI thread.
+ */
+public class MutableStateSource implements StateSource {
+    private final ArrayList<Observer> mObservers = new ArrayList<Observer>();
+
+    private int mState;
+
+    public MutableStateSource() {
+        this(MultiStateView.CONTENT_STATE_ID_CONTENT);
+    }
+
+    public MutableStateSource(int initialState) {
+        mState = initialState;
+    }
+
+    @Override
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * Emits the given state to every observer, even if it's the same as the current one
+     *
+     * @param state
+     */
+    public void setState(int state) {
+        mState = state;
+
+        // Iterate backwards so that observers may remove themselves
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onStateChanged(this, state);
+        }
+    }
+
+    @Override
+    public void addObserver(Observer observer) {
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
+        }
+    }
+
+    @Override
+    public void removeObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+}
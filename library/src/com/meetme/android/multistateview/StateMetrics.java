@@ -0,0 +1,234 @@
+package com.meetme.android.multistateview;
+
+/**
+ * Per-state counters and histograms collected by a {@link MultiStateView} (see {@link MultiStateView#setMetricsEnabled(boolean)}): how often each
+ * state was shown, how long it stayed visible, and how long it took between {@link MultiStateView#setContentState(int)} and the state actually
+ * becoming visible.
+ * <p/>
+ * Everything is kept in primitive arrays, and recording never allocates once a state has been seen, so this is cheap enough to leave on in
+ * production builds. Durations are bucketed in powers of two milliseconds: bucket {@code i} counts durations below {@link
+ * #getBucketUpperBoundMillis(int)}, and the last bucket counts everything above.
+ * <p/>
+ * This class is not thread-safe; read it from the UI thread.
+ */
+public class StateMetrics {
+    public static final int BUCKET_COUNT = 16;
+
+    private static final int INITIAL_CAPACITY = 5;
+
+    private int[] mStates = new int[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    private int[] mShownCounts = new int[INITIAL_CAPACITY];
+
+    private long[] mTotalTimeInState = new long[INITIAL_CAPACITY];
+
+    private long[] mTotalLatency = new long[INITIAL_CAPACITY];
+
+    /**
+     * When each state was last requested (or -1 if it hasn't been since it was last shown)
+     */
+    private long[] mRequestTimes = new long[INITIAL_CAPACITY];
+
+    private int[] mTimeInStateBuckets = new int[INITIAL_CAPACITY * BUCKET_COUNT];
+
+    private int[] mLatencyBuckets = new int[INITIAL_CAPACITY * BUCKET_COUNT];
+
+    private int mVisibleState = -1;
+
+    private long mVisibleSince;
+
+    /**
+     * @return the number of states for which metrics have been recorded
+     */
+    public int getStateCount() {
+        return mSize;
+    }
+
+    /**
+     * @param index between 0 and {@link #getStateCount()}
+     * @return the state id at the given index
+     */
+    public int getStateAt(int index) {
+        return mStates[index];
+    }
+
+    /**
+     * @param state
+     * @return the number of times the given state has become visible
+     */
+    public int getShownCount(int state) {
+        final int index = indexOf(state);
+        return index < 0 ? 0 : mShownCounts[index];
+    }
+
+    /**
+     * @param state
+     * @return the total time, in milliseconds, the given state has been visible (not counting the current visit, if the state is visible now)
+     */
+    public long getTotalTimeInState(int state) {
+        final int index = indexOf(state);
+        return index < 0 ? 0 : mTotalTimeInState[index];
+    }
+
+    /**
+     * @param state
+     * @return the total time, in milliseconds, spent between requesting the given state and it becoming visible
+     */
+    public long getTotalLatency(int state) {
+        final int index = indexOf(state);
+        return index < 0 ? 0 : mTotalLatency[index];
+    }
+
+    /**
+     * Copies the time-in-state histogram of the given state into the given array
+     *
+     * @param state
+     * @param out an array of at least {@link #BUCKET_COUNT} elements
+     * @return the given array
+     */
+    public int[] getTimeInStateHistogram(int state, int[] out) {
+        return copyBuckets(mTimeInStateBuckets, state, out);
+    }
+
+    /**
+     * Copies the request-to-visible latency histogram of the given state into the given array
+     *
+     * @param state
+     * @param out an array of at least {@link #BUCKET_COUNT} elements
+     * @return the given array
+     */
+    public int[] getLatencyHistogram(int state, int[] out) {
+        return copyBuckets(mLatencyBuckets, state, out);
+    }
+
+    /**
+     * @param bucket
+     * @return the exclusive upper bound, in milliseconds, of durations counted in the given bucket ({@link Long#MAX_VALUE} for the last one)
+     */
+    public static long getBucketUpperBoundMillis(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Clears everything recorded so far
+     */
+    public void reset() {
+        mSize = 0;
+        mVisibleState = -1;
+    }
+
+    void onStateRequested(int state, long now) {
+        mRequestTimes[obtainIndex(state)] = now;
+    }
+
+    void onStateShown(int state, long now) {
+        if (mVisibleState != -1) {
+            final int previous = obtainIndex(mVisibleState);
+            final long timeInState = now - mVisibleSince;
+
+            mTotalTimeInState[previous] += timeInState;
+            mTimeInStateBuckets[previous * BUCKET_COUNT + bucketOf(timeInState)]++;
+        }
+
+        final int index = obtainIndex(state);
+        mShownCounts[index]++;
+
+        if (mRequestTimes[index] >= 0) {
+            final long latency = now - mRequestTimes[index];
+
+            mTotalLatency[index] += latency;
+            mLatencyBuckets[index * BUCKET_COUNT + bucketOf(latency)]++;
+            mRequestTimes[index] = -1;
+        }
+
+        mVisibleState = state;
+        mVisibleSince = now;
+    }
+
+    private int[] copyBuckets(int[] buckets, int state, int[] out) {
+        final int index = indexOf(state);
+
+        if (index < 0) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                out[i] = 0;
+            }
+        } else {
+            System.arraycopy(buckets, index * BUCKET_COUNT, out, 0, BUCKET_COUNT);
+        }
+
+        return out;
+    }
+
+    private static int bucketOf(long millis) {
+        int bucket = 0;
+
+        while (bucket < BUCKET_COUNT - 1 && millis >= (1L << bucket)) {
+            bucket++;
+        }
+
+        return bucket;
+    }
+
+    private int indexOf(int state) {
+        // Only a handful of states are ever in use, so a linear scan beats hashing
+        for (int i = 0; i < mSize; i++) {
+            if (mStates[i] == state) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int obtainIndex(int state) {
+        int index = indexOf(state);
+
+        if (index >= 0) {
+            return index;
+        }
+
+        if (mSize == mStates.length) {
+            grow();
+        }
+
+        index = mSize++;
+        mStates[index] = state;
+        mShownCounts[index] = 0;
+        mTotalTimeInState[index] = 0;
+        mTotalLatency[index] = 0;
+        mRequestTimes[index] = -1;
+
+        for (int i = index * BUCKET_COUNT, end = i + BUCKET_COUNT; i < end; i++) {
+            mTimeInStateBuckets[i] = 0;
+            mLatencyBuckets[i] = 0;
+        }
+
+        return index;
+    }
+
+    private void grow() {
+        final int capacity = mStates.length * 2;
+
+        mStates = copyOf(mStates, capacity);
+        mShownCounts = copyOf(mShownCounts, capacity);
+        mTotalTimeInState = copyOf(mTotalTimeInState, capacity);
+        mTotalLatency = copyOf(mTotalLatency, capacity);
+        mRequestTimes = copyOf(mRequestTimes, capacity);
+        mTimeInStateBuckets = copyOf(mTimeInStateBuckets, capacity * BUCKET_COUNT);
+        mLatencyBuckets = copyOf(mLatencyBuckets, capacity * BUCKET_COUNT);
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
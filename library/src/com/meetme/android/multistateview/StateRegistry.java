@@ -0,0 +1,226 @@
+package com.meetme.android.multistateview;
+
+import android.view.View;
+
+import java.util.Arrays;
+
+/**
+ * Per-state bookkeeping for a {@link MultiStateView}: the provider, cached view, last-use stamp and hide policy of every registered state id.
+ * <p/>
+ * Entries are stored densely in parallel arrays (so they can be walked by index), and found through an open-addressed table of primitive state
+ * ids, so that lookups on the transition path are O(1) and never box.
+ */
+final class StateRegistry {
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Marks an unused slot in {@link #mTable}
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * Hash table of indices into the dense arrays below; its length is always a power of two, and at least twice the number of entries
+     */
+    private int[] mTable;
+
+    private int[] mStates;
+
+    private MultiStateView.StateViewProvider[] mProviders;
+
+    private View[] mViews;
+
+    private long[] mLastUsed;
+
+    private int[] mHidePolicies;
+
+    /**
+     * The number of states whose hide policy keeps their view in layout while hidden
+     */
+    private int mRetainedCount;
+
+    private int mSize;
+
+    StateRegistry() {
+        mStates = new int[INITIAL_CAPACITY];
+        mProviders = new MultiStateView.StateViewProvider[INITIAL_CAPACITY];
+        mViews = new View[INITIAL_CAPACITY];
+        mLastUsed = new long[INITIAL_CAPACITY];
+        mHidePolicies = new int[INITIAL_CAPACITY];
+        mTable = newTable(INITIAL_CAPACITY * 2);
+    }
+
+    /**
+     * @return the number of registered states
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @param index between 0 and {@link #size()}
+     * @return the state id stored at the given index
+     */
+    int stateAt(int index) {
+        return mStates[index];
+    }
+
+    /**
+     * @param state
+     * @return the index of the given state, or -1 if it isn't registered
+     */
+    int indexOf(int state) {
+        final int mask = mTable.length - 1;
+
+        for (int slot = hash(state) & mask; ; slot = (slot + 1) & mask) {
+            final int index = mTable[slot];
+
+            if (index == EMPTY) {
+                return -1;
+            }
+
+            if (mStates[index] == state) {
+                return index;
+            }
+        }
+    }
+
+    MultiStateView.StateViewProvider getProvider(int state) {
+        final int index = indexOf(state);
+        return index < 0 ? null : mProviders[index];
+    }
+
+    void setProvider(int state, MultiStateView.StateViewProvider provider) {
+        mProviders[obtainIndex(state)] = provider;
+    }
+
+    View getView(int state) {
+        final int index = indexOf(state);
+        return index < 0 ? null : mViews[index];
+    }
+
+    void setView(int state, View view) {
+        mViews[obtainIndex(state)] = view;
+    }
+
+    /**
+     * @param state
+     * @return the stamp last recorded via {@link #setLastUsed(int, long)}, or 0 if none
+     */
+    long getLastUsed(int state) {
+        final int index = indexOf(state);
+        return index < 0 ? 0 : mLastUsed[index];
+    }
+
+    void setLastUsed(int state, long stamp) {
+        mLastUsed[obtainIndex(state)] = stamp;
+    }
+
+    /**
+     * @param state
+     * @return the hide policy set via {@link #setHidePolicy(int, int)}, or {@link MultiStateView#HIDE_POLICY_GONE} if none
+     */
+    int getHidePolicy(int state) {
+        final int index = indexOf(state);
+        return index < 0 ? MultiStateView.HIDE_POLICY_GONE : mHidePolicies[index];
+    }
+
+    void setHidePolicy(int state, int policy) {
+        final int index = obtainIndex(state);
+
+        if (mHidePolicies[index] != MultiStateView.HIDE_POLICY_GONE) {
+            mRetainedCount--;
+        }
+
+        if (policy != MultiStateView.HIDE_POLICY_GONE) {
+            mRetainedCount++;
+        }
+
+        mHidePolicies[index] = policy;
+    }
+
+    /**
+     * @return true if any state's hide policy keeps its view in layout while hidden
+     */
+    boolean hasRetainedStates() {
+        return mRetainedCount > 0;
+    }
+
+    /**
+     * Finds the index for the given state, adding an entry for it if needed
+     *
+     * @param state
+     * @return
+     */
+    private int obtainIndex(int state) {
+        int index = indexOf(state);
+
+        if (index >= 0) {
+            return index;
+        }
+
+        if (mSize == mStates.length) {
+            grow();
+        }
+
+        index = mSize++;
+        mStates[index] = state;
+        insert(mTable, state, index);
+
+        return index;
+    }
+
+    private void grow() {
+        final int capacity = mStates.length * 2;
+
+        int[] states = new int[capacity];
+        System.arraycopy(mStates, 0, states, 0, mSize);
+        mStates = states;
+
+        MultiStateView.StateViewProvider[] providers = new MultiStateView.StateViewProvider[capacity];
+        System.arraycopy(mProviders, 0, providers, 0, mSize);
+        mProviders = providers;
+
+        View[] views = new View[capacity];
+        System.arraycopy(mViews, 0, views, 0, mSize);
+        mViews = views;
+
+        long[] lastUsed = new long[capacity];
+        System.arraycopy(mLastUsed, 0, lastUsed, 0, mSize);
+        mLastUsed = lastUsed;
+
+        int[] hidePolicies = new int[capacity];
+        System.arraycopy(mHidePolicies, 0, hidePolicies, 0, mSize);
+        mHidePolicies = hidePolicies;
+
+        int[] table = newTable(capacity * 2);
+
+        for (int i = 0; i < mSize; i++) {
+            insert(table, mStates[i], i);
+        }
+
+        mTable = table;
+    }
+
+    private static int[] newTable(int length) {
+        int[] table = new int[length];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static void insert(int[] table, int state, int index) {
+        final int mask = table.length - 1;
+        int slot = hash(state) & mask;
+
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = index;
+    }
+
+    private static int hash(int state) {
+        // Built-in ids are small and consecutive; spread them (and any custom ids) across the table
+        final int h = state * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
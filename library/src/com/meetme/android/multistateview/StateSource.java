@@ -0,0 +1,29 @@
+package com.meetme.android.multistateview;
+
+/**
+ * A stream of content states (for example, from a view model) that a {@link MultiStateView} can follow; see {@link
+ * MultiStateView#bindStateSource(StateSource, long)}.
+ * <p/>
+ * Observers are added and removed, and notified, on the UI thread.
+ */
+public interface StateSource {
+    /**
+     * Receives the states emitted by a {@link StateSource}
+     */
+    interface Observer {
+        /**
+         * @param source
+         * @param state the newly emitted state; may be the same as the previous one
+         */
+        void onStateChanged(StateSource source, int state);
+    }
+
+    /**
+     * @return the most recently emitted state
+     */
+    int getState();
+
+    void addObserver(Observer observer);
+
+    void removeObserver(Observer observer);
+}
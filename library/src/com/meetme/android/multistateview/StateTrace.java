@@ -0,0 +1,238 @@
+package com.meetme.android.multistateview;
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.SparseArray;
+import android.view.View;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Tracing and transition history of a single {@link MultiStateView}: {@link Trace} sections (visible in systrace and Perfetto) around the work
+ * done for a state, labeled with the view and state id, and a fixed-size ring buffer of recent transitions for {@link
+ * MultiStateView#dump(String, java.io.FileDescriptor, PrintWriter, String[])}.
+ * <p/>
+ * Both are governed by one global switch (see {@link MultiStateView#setTracingEnabled(boolean)}); while it's off, nothing is recorded and the
+ * only cost is reading a static field.
+ */
+final class StateTrace {
+    static final int OP_INFLATE = 0;
+
+    static final int OP_BIND = 1;
+
+    static final int OP_SHOW = 2;
+
+    static final int OP_HIDE = 3;
+
+    private static final String[] OP_NAMES = {"inflate", "bind", "show", "hide"};
+
+    static final int HISTORY_SIZE = 32;
+
+    /**
+     * Trace section names are limited to 127 characters
+     */
+    private static final int MAX_LABEL_LENGTH = 127;
+
+    private static volatile boolean sEnabled;
+
+    private final View mView;
+
+    /**
+     * Labels per state, indexed by OP_*; built once, so that tracing doesn't allocate on every transition
+     */
+    private SparseArray<String[]> mLabels;
+
+    private final int[] mHistoryStates = new int[HISTORY_SIZE];
+
+    private final long[] mHistoryTimes = new long[HISTORY_SIZE];
+
+    private final long[] mHistoryInflationNanos = new long[HISTORY_SIZE];
+
+    /**
+     * Where the next transition goes in the history arrays
+     */
+    private int mHistoryHead;
+
+    private int mHistoryCount;
+
+    /**
+     * The last state view created, and how long that took, until it's taken by the transition that created it
+     */
+    private int mInflatedState = -1;
+
+    private long mInflationNanos;
+
+    StateTrace(View view) {
+        mView = view;
+    }
+
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Begins a trace section for the given operation on the given state, if tracing is enabled. Must be matched by {@link #end()} when this
+     * returns true.
+     *
+     * @param op one of the OP_* constants
+     * @param state
+     * @return true if a section was begun
+     */
+    boolean begin(int op, int state) {
+        if (!sEnabled) {
+            return false;
+        }
+
+        begin(getLabel(op, state));
+        return true;
+    }
+
+    /**
+     * Begins a trace section with a label from {@link #getLabel(int, int)}; unlike {@link #begin(int, int)} this may be called from any thread
+     *
+     * @param label
+     */
+    static void begin(String label) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            TraceImpl.beginSection(label);
+        }
+    }
+
+    static void end() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            TraceImpl.endSection();
+        }
+    }
+
+    /**
+     * Notes how long creating the view for the given state took, to be recorded with the transition to that state
+     *
+     * @param state
+     * @param nanos
+     */
+    void onInflated(int state, long nanos) {
+        mInflatedState = state;
+        mInflationNanos = nanos;
+    }
+
+    /**
+     * Forgets any inflation noted for the given state, e.g. when it was created ahead of time rather than for a transition
+     *
+     * @param state
+     */
+    void discardInflation(int state) {
+        if (mInflatedState == state) {
+            mInflatedState = -1;
+        }
+    }
+
+    /**
+     * Adds a transition to the given state to the history, if tracing is enabled
+     *
+     * @param state
+     */
+    void recordTransition(int state) {
+        if (!sEnabled) {
+            return;
+        }
+
+        final int index = mHistoryHead;
+
+        mHistoryStates[index] = state;
+        mHistoryTimes[index] = SystemClock.uptimeMillis();
+        mHistoryInflationNanos[index] = mInflatedState == state ? mInflationNanos : 0;
+
+        mInflatedState = -1;
+        mHistoryHead = (index + 1) % HISTORY_SIZE;
+
+        if (mHistoryCount < HISTORY_SIZE) {
+            mHistoryCount++;
+        }
+    }
+
+    /**
+     * Prints the recorded transitions, newest first
+     *
+     * @param prefix
+     * @param writer
+     */
+    void dumpHistory(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.print("Recent transitions (");
+        writer.print(mHistoryCount);
+        writer.println(sEnabled ? "):" : ", tracing disabled):");
+
+        for (int i = 0; i < mHistoryCount; i++) {
+            final int index = (mHistoryHead - 1 - i + HISTORY_SIZE) % HISTORY_SIZE;
+
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "  #%d: state=%d at=%dms inflation=%.3fms", i, mHistoryStates[index], mHistoryTimes[index],
+                    mHistoryInflationNanos[index] / 1000000f));
+        }
+    }
+
+    /**
+     * @param op
+     * @param state
+     * @return the trace section label for the given operation on the given state; UI thread only
+     */
+    String getLabel(int op, int state) {
+        if (mLabels == null) {
+            mLabels = new SparseArray<String[]>();
+        }
+
+        String[] labels = mLabels.get(state);
+
+        if (labels == null) {
+            labels = new String[OP_NAMES.length];
+            mLabels.put(state, labels);
+        }
+
+        if (labels[op] == null) {
+            String label = "MultiStateView(" + getViewName(mView) + ") " + OP_NAMES[op] + " state " + state;
+            labels[op] = label.length() > MAX_LABEL_LENGTH ? label.substring(0, MAX_LABEL_LENGTH) : label;
+        }
+
+        return labels[op];
+    }
+
+    /**
+     * @param view
+     * @return the id name of the given view, or its identity hash if it has none, so that trace sections can be told apart per instance
+     */
+    static String getViewName(View view) {
+        final int id = view.getId();
+
+        if (id != View.NO_ID && view.getResources() != null) {
+            try {
+                return view.getResources().getResourceEntryName(id);
+            } catch (Resources.NotFoundException e) {
+                // Generated id; fall through
+            }
+        }
+
+        return "@" + Integer.toHexString(System.identityHashCode(view));
+    }
+
+    /**
+     * Kept separate so that {@link Trace} is only loaded on platforms that have it
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static final class TraceImpl {
+        static void beginSection(String label) {
+            Trace.beginSection(label);
+        }
+
+        static void endSection() {
+            Trace.endSection();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.meetme.android.multistateview;
+
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of hidden state views that can be shared across multiple {@link MultiStateView} instances (for example, all of the MultiStateView cells of a
+ * single list). Views are keyed by both their state id and the layout resource they were inflated from, so two instances using different layouts for
+ * the same state never receive each other's views.
+ * <p/>
+ * A MultiStateView that has been given a pool (see {@link MultiStateView#setStateViewPool(StateViewPool)}) will borrow views from it before
+ * inflating, and will return its hidden state views to it when it is detached from the window.
+ * <p/>
+ * This class is not thread-safe and is meant to be used from the UI thread only.
+ */
+public class StateViewPool {
+    private static final int DEFAULT_MAX_SCRAP = 5;
+
+    private final SparseArray<SparseArray<ScrapHeap>> mScrap = new SparseArray<SparseArray<ScrapHeap>>();
+
+    private final int mDefaultMaxScrap;
+
+    public StateViewPool() {
+        this(DEFAULT_MAX_SCRAP);
+    }
+
+    /**
+     * @param defaultMaxScrap the maximum number of views held for each state id and layout resource pair, unless overridden via
+     *                        {@link #setMaxRecycledViews(int, int, int)}
+     */
+    public StateViewPool(int defaultMaxScrap) {
+        mDefaultMaxScrap = defaultMaxScrap;
+    }
+
+    /**
+     * Sets the maximum number of views held for the given state id and layout resource pair. Views beyond the new capacity are discarded.
+     *
+     * @param stateViewId
+     * @param layoutResId
+     * @param max
+     */
+    public void setMaxRecycledViews(int stateViewId, int layoutResId, int max) {
+        ScrapHeap heap = getScrapHeap(stateViewId, layoutResId);
+        heap.maxScrap = max;
+
+        while (heap.views.size() > max) {
+            heap.views.remove(heap.views.size() - 1);
+        }
+    }
+
+    /**
+     * Retrieves a previously recycled view for the given state id and layout resource, if one is available
+     *
+     * @param stateViewId
+     * @param layoutResId
+     * @return a detached view, or null if the pool holds no view for that key
+     */
+    public View getRecycledView(int stateViewId, int layoutResId) {
+        SparseArray<ScrapHeap> byLayout = mScrap.get(stateViewId);
+
+        if (byLayout == null) {
+            return null;
+        }
+
+        ScrapHeap heap = byLayout.get(layoutResId);
+
+        if (heap == null || heap.views.isEmpty()) {
+            return null;
+        }
+
+        return heap.views.remove(heap.views.size() - 1);
+    }
+
+    /**
+     * Adds the given view to the pool. The view must already be detached from its parent.
+     *
+     * @param stateViewId
+     * @param layoutResId
+     * @param view
+     * @return true if the view was pooled, false if the pool for that key is already full (in which case the view is simply dropped)
+     */
+    public boolean putRecycledView(int stateViewId, int layoutResId, View view) {
+        if (view.getParent() != null) {
+            throw new IllegalArgumentException("Can't pool a view that is still attached to a parent");
+        }
+
+        ScrapHeap heap = getScrapHeap(stateViewId, layoutResId);
+
+        if (heap.views.size() >= heap.maxScrap) {
+            return false;
+        }
+
+        heap.views.add(view);
+        return true;
+    }
+
+    /**
+     * Discards every view held by this pool
+     */
+    public void clear() {
+        mScrap.clear();
+    }
+
+    private ScrapHeap getScrapHeap(int stateViewId, int layoutResId) {
+        SparseArray<ScrapHeap> byLayout = mScrap.get(stateViewId);
+
+        if (byLayout == null) {
+            byLayout = new SparseArray<ScrapHeap>();
+            mScrap.put(stateViewId, byLayout);
+        }
+
+        ScrapHeap heap = byLayout.get(layoutResId);
+
+        if (heap == null) {
+            heap = new ScrapHeap(mDefaultMaxScrap);
+            byLayout.put(layoutResId, heap);
+        }
+
+        return heap;
+    }
+
+    private static class ScrapHeap {
+        final ArrayList<View> views = new ArrayList<View>();
+
+        int maxScrap;
+
+        ScrapHeap(int maxScrap) {
+            this.maxScrap = maxScrap;
+        }
+    }
+}
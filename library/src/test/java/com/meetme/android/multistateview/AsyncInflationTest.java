@@ -0,0 +1,142 @@
+package com.meetme.android.multistateview;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A state view that fails to inflate in the background only fails on the UI thread when it would actually have been shown
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AsyncInflationTest {
+    private static final int STATE = TestHost.CUSTOM_STATE + 1;
+
+    private TestHost mHost;
+
+    private MultiStateView mView;
+
+    private final FailingProvider mProvider = new FailingProvider();
+
+    /**
+     * Inflations handed to the executor, run by the tests themselves
+     */
+    private final ArrayList<Runnable> mInflations = new ArrayList<Runnable>();
+
+    @Before
+    public void setUp() {
+        mHost = new TestHost();
+        mView = mHost.newAttachedView();
+        mView.registerStateViewProvider(STATE, mProvider);
+        mView.setAsyncInflationEnabled(true);
+        mView.setInflationExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mInflations.add(command);
+            }
+        });
+        TestHost.flush();
+
+        // Keeps each inflation's result queued until flushed
+        TestHost.pauseMainLooper();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failureIsRethrownWhenDelivered() {
+        mView.setContentState(STATE);
+        runInflation(0);
+
+        TestHost.flush();
+    }
+
+    @Test
+    public void failureIsDroppedWhenCancelled() {
+        mView.setContentState(STATE);
+        runInflation(0);
+
+        // The failure is already on its way to the UI thread
+        mView.setContentState(MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        TestHost.flush();
+
+        assertEquals(MultiStateView.CONTENT_STATE_ID_CONTENT, mView.getContentState());
+        assertEquals(View.VISIBLE, mView.getContentView().getVisibility());
+        assertEquals(1, mView.getChildCount());
+    }
+
+    @Test
+    public void failureWhileDetachedIsRetriedOnAttach() {
+        mView.setContentState(STATE);
+        mHost.detach(mView);
+        runInflation(0);
+
+        TestHost.flush();
+
+        mProvider.fail = false;
+        mHost.attach(mView);
+
+        assertEquals(2, mInflations.size());
+
+        runInflation(1);
+        TestHost.flush();
+
+        assertEquals(1, mProvider.created);
+        assertEquals(2, mView.getChildCount());
+        assertEquals(View.VISIBLE, mView.getChildAt(1).getVisibility());
+        assertEquals(View.GONE, mView.getContentView().getVisibility());
+    }
+
+    @Test
+    public void failureWhileDetachedIsDroppedWhenStateChanges() {
+        mView.setContentState(STATE);
+        mHost.detach(mView);
+        runInflation(0);
+        TestHost.flush();
+
+        mView.setContentState(MultiStateView.CONTENT_STATE_ID_CONTENT);
+        mHost.attach(mView);
+        TestHost.flush();
+
+        assertEquals(1, mInflations.size());
+        assertEquals(View.VISIBLE, mView.getContentView().getVisibility());
+    }
+
+    /**
+     * Runs the given inflation on this thread, as the inflation executor would have on its own
+     */
+    private void runInflation(int index) {
+        mInflations.get(index).run();
+    }
+
+    private static class FailingProvider implements MultiStateView.StateViewProvider<TextView> {
+        boolean fail = true;
+
+        int created;
+
+        @Override
+        public TextView onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+            if (fail) {
+                throw new IllegalStateException("Failed to create the view for state " + stateViewId);
+            }
+
+            created++;
+            return new TextView(context);
+        }
+
+        @Override
+        public void onBeforeViewShown(int stateViewId, TextView view) {
+        }
+    }
+}
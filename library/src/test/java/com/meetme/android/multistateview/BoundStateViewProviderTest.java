@@ -0,0 +1,144 @@
+package com.meetme.android.multistateview;
+
+import android.content.Context;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * State views bound through a {@link BoundStateViewProvider} are only bound again when their payload changes
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BoundStateViewProviderTest {
+    private static final int STATE = TestHost.CUSTOM_STATE + 1;
+
+    private MultiStateView mView;
+
+    private final CountingProvider mProvider = new CountingProvider();
+
+    @Before
+    public void setUp() {
+        mView = new TestHost().newAttachedView();
+        mView.registerStateViewProvider(STATE, mProvider);
+        TestHost.flush();
+
+        TestHost.pauseMainLooper();
+    }
+
+    @Test
+    public void equalPayloadSkipsRebinding() {
+        mProvider.payload = "First";
+        show(STATE);
+        show(MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        // Equal, but not the same instance
+        mProvider.payload = new String("First");
+        show(STATE);
+
+        assertEquals(1, mProvider.holders);
+        assertEquals(1, mProvider.binds);
+
+        show(MultiStateView.CONTENT_STATE_ID_CONTENT);
+        mProvider.payload = "Second";
+        show(STATE);
+
+        assertEquals(1, mProvider.holders);
+        assertEquals(2, mProvider.binds);
+        assertEquals("Second", mProvider.view.getText().toString());
+    }
+
+    @Test
+    public void invalidatedViewIsBoundAgain() {
+        mProvider.payload = "First";
+        show(STATE);
+        show(MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        BoundStateViewProvider.invalidate(mProvider.view);
+        show(STATE);
+
+        assertEquals(1, mProvider.holders);
+        assertEquals(2, mProvider.binds);
+    }
+
+    @Test
+    public void customErrorTextSurvivesShowingGeneralErrorAgain() {
+        mView.setCustomErrorString("Custom");
+        show(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL);
+
+        final TextView title = (TextView) mView.getGeneralErrorView().findViewById(R.id.error_title);
+        assertEquals("Custom", title.getText().toString());
+
+        show(MultiStateView.CONTENT_STATE_ID_CONTENT);
+        show(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL);
+
+        assertEquals("Custom", title.getText().toString());
+    }
+
+    @Test
+    public void customErrorTextIsBoundWhileShown() {
+        show(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL);
+
+        final TextView title = (TextView) mView.getGeneralErrorView().findViewById(R.id.error_title);
+        assertEquals(mView.getGeneralErrorTitleString(), title.getText().toString());
+
+        mView.setCustomErrorString("Custom");
+
+        assertEquals("Custom", title.getText().toString());
+
+        // Back to the default title
+        mView.setCustomErrorString(null);
+        show(MultiStateView.CONTENT_STATE_ID_CONTENT);
+        show(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL);
+
+        assertEquals(mView.getGeneralErrorTitleString(), title.getText().toString());
+    }
+
+    private void show(int state) {
+        mView.setContentState(state);
+        TestHost.flush();
+    }
+
+    /**
+     * Binds its payload as the text of a TextView, which is its own holder, counting holders and binds
+     */
+    private static class CountingProvider extends BoundStateViewProvider<TextView, TextView, String> {
+        String payload;
+
+        TextView view;
+
+        int holders;
+
+        int binds;
+
+        @Override
+        public TextView onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+            view = new TextView(context);
+            return view;
+        }
+
+        @Override
+        protected TextView onCreateHolder(int stateViewId, TextView view) {
+            holders++;
+            return view;
+        }
+
+        @Override
+        protected String getPayload(int stateViewId) {
+            return payload;
+        }
+
+        @Override
+        protected void onBindHolder(int stateViewId, TextView holder, String payload) {
+            binds++;
+            holder.setText(payload);
+        }
+    }
+}
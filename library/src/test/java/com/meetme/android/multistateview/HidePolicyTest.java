@@ -0,0 +1,236 @@
+package com.meetme.android.multistateview;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Views whose hide policy keeps them in layout while hidden stay laid out (or visible) across state changes, and are never given away by the
+ * view caches
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class HidePolicyTest {
+    private static final int WIDTH = 480;
+
+    private static final int HEIGHT = 800;
+
+    private static final int RETAINED_STATE = TestHost.CUSTOM_STATE + 1;
+
+    private static final int OTHER_STATE = TestHost.CUSTOM_STATE + 2;
+
+    private TestHost mHost;
+
+    private MultiStateView mView;
+
+    private View mContent;
+
+    private final TestHost.TextViewProvider mRetainedProvider = new TestHost.TextViewProvider();
+
+    private final TestHost.TextViewProvider mOtherProvider = new TestHost.TextViewProvider();
+
+    @Before
+    public void setUp() {
+        mHost = new TestHost();
+        mView = mHost.newAttachedView();
+        mContent = mView.getContentView();
+        mView.registerStateViewProvider(RETAINED_STATE, mRetainedProvider);
+        mView.registerStateViewProvider(OTHER_STATE, mOtherProvider);
+        TestHost.flush();
+
+        TestHost.pauseMainLooper();
+    }
+
+    @Test
+    public void invisibleContentStaysLaidOutWhileLoading() {
+        mView.setStateHidePolicy(MultiStateView.CONTENT_STATE_ID_CONTENT, MultiStateView.HIDE_POLICY_INVISIBLE);
+        TestHost.layout(mView, WIDTH, HEIGHT);
+
+        show(mView, MultiStateView.CONTENT_STATE_ID_LOADING);
+        TestHost.layout(mView, WIDTH, HEIGHT);
+
+        assertEquals(View.INVISIBLE, mContent.getVisibility());
+        assertEquals(WIDTH, mContent.getWidth());
+        assertEquals(HEIGHT, mContent.getHeight());
+
+        show(mView, MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        assertEquals(View.VISIBLE, mContent.getVisibility());
+        // Only GONE <-> VISIBLE changes take a view out of layout and back in
+        assertFalse(mContent.isLayoutRequested());
+    }
+
+    @Test
+    public void goneContentIsLaidOutAgainAfterLoading() {
+        TestHost.layout(mView, WIDTH, HEIGHT);
+
+        show(mView, MultiStateView.CONTENT_STATE_ID_LOADING);
+        TestHost.layout(mView, WIDTH, HEIGHT);
+
+        assertEquals(View.GONE, mContent.getVisibility());
+
+        show(mView, MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        assertTrue(mContent.isLayoutRequested());
+    }
+
+    @Test
+    public void overlaidContentStaysVisibleUnderStateView() {
+        mView.setStateHidePolicy(MultiStateView.CONTENT_STATE_ID_CONTENT, MultiStateView.HIDE_POLICY_OVERLAY);
+
+        show(mView, MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        final View loading = mView.getLoadingView();
+        assertEquals(View.VISIBLE, mContent.getVisibility());
+        assertEquals(View.VISIBLE, loading.getVisibility());
+        // Drawn on top of the content
+        assertTrue(mView.indexOfChild(loading) > mView.indexOfChild(mContent));
+    }
+
+    @Test
+    public void retainedViewIsNotReleased() {
+        mView.setStateHidePolicy(RETAINED_STATE, MultiStateView.HIDE_POLICY_INVISIBLE);
+
+        show(mView, RETAINED_STATE);
+        show(mView, OTHER_STATE);
+        show(mView, MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        mView.releaseHiddenStateViews();
+
+        show(mView, RETAINED_STATE);
+        show(mView, OTHER_STATE);
+
+        assertEquals(1, mRetainedProvider.created);
+        assertEquals(2, mOtherProvider.created);
+    }
+
+    @Test
+    public void retainedViewIsNotTrimmedNorCounted() {
+        mView.setStateHidePolicy(RETAINED_STATE, MultiStateView.HIDE_POLICY_INVISIBLE);
+
+        final TestHost.TextViewProvider thirdProvider = new TestHost.TextViewProvider();
+        mView.registerStateViewProvider(OTHER_STATE + 1, thirdProvider);
+        mView.setMaxCachedStateViews(1);
+
+        show(mView, RETAINED_STATE);
+        show(mView, OTHER_STATE);
+        // Only now is there more than one view to count
+        show(mView, OTHER_STATE + 1);
+
+        show(mView, RETAINED_STATE);
+        show(mView, OTHER_STATE);
+
+        assertEquals(1, mRetainedProvider.created);
+        assertEquals(2, mOtherProvider.created);
+        assertEquals(1, thirdProvider.created);
+    }
+
+    @Test
+    public void retainedViewIsNotDetached() {
+        mView.setStateHidePolicy(RETAINED_STATE, MultiStateView.HIDE_POLICY_INVISIBLE);
+        mView.setDetachInactiveStates(true);
+
+        show(mView, RETAINED_STATE);
+        show(mView, OTHER_STATE);
+        show(mView, MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        assertSame(mView, mRetainedProvider.view.getParent());
+        assertEquals(View.INVISIBLE, mRetainedProvider.view.getVisibility());
+        assertNull(mOtherProvider.view.getParent());
+    }
+
+    @Test
+    public void retainedViewIsNotPooled() {
+        final StateViewPool pool = new StateViewPool();
+        final MultiStateView other = mHost.newAttachedView();
+        other.setStateViewPool(pool);
+        mView.setStateViewPool(pool);
+        mView.setStateHidePolicy(MultiStateView.CONTENT_STATE_ID_LOADING, MultiStateView.HIDE_POLICY_INVISIBLE);
+
+        show(mView, MultiStateView.CONTENT_STATE_ID_LOADING);
+        show(mView, MultiStateView.CONTENT_STATE_ID_CONTENT);
+        show(other, MultiStateView.CONTENT_STATE_ID_LOADING);
+        show(other, MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        final View loading = mView.getLoadingView();
+        final View otherLoading = other.getLoadingView();
+
+        // Both hand their hidden views to the pool once detached
+        mHost.detach(mView);
+        mHost.detach(other);
+        TestHost.flush();
+
+        final int layoutResId = mView.getLoadingLayoutResourceId();
+        assertSame(otherLoading, pool.getRecycledView(MultiStateView.CONTENT_STATE_ID_LOADING, layoutResId));
+        assertNull(pool.getRecycledView(MultiStateView.CONTENT_STATE_ID_LOADING, layoutResId));
+        assertSame(mView, loading.getParent());
+        assertSame(loading, mView.getLoadingView());
+    }
+
+    @Test
+    public void measuresOnlyDisplayedViewWhenNothingIsRetained() {
+        setUpMeasuredViews();
+        show(mView, TestHost.CUSTOM_STATE);
+
+        measureAtMost(mView);
+
+        assertEquals(100, mView.getMeasuredWidth());
+        assertEquals(100, mView.getMeasuredHeight());
+    }
+
+    @Test
+    public void measuresLikeFrameLayoutWhileAViewIsRetained() {
+        setUpMeasuredViews();
+        mView.setStateHidePolicy(MultiStateView.CONTENT_STATE_ID_CONTENT, MultiStateView.HIDE_POLICY_INVISIBLE);
+        show(mView, TestHost.CUSTOM_STATE);
+
+        measureAtMost(mView);
+
+        // The invisible content still takes up space
+        assertEquals(300, mView.getMeasuredWidth());
+        assertEquals(300, mView.getMeasuredHeight());
+        assertEquals(300, mContent.getMeasuredWidth());
+    }
+
+    /**
+     * Makes the content 300px square and the view of {@link TestHost#CUSTOM_STATE} 100px square
+     */
+    private void setUpMeasuredViews() {
+        mContent.setLayoutParams(new FrameLayout.LayoutParams(300, 300));
+        mView.registerStateViewProvider(TestHost.CUSTOM_STATE, new MultiStateView.StateViewProvider<View>() {
+            @Override
+            public View onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+                View view = new View(context);
+                view.setLayoutParams(new FrameLayout.LayoutParams(100, 100));
+                return view;
+            }
+
+            @Override
+            public void onBeforeViewShown(int stateViewId, View view) {
+            }
+        });
+    }
+
+    private static void measureAtMost(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.AT_MOST));
+    }
+
+    private static void show(MultiStateView view, int state) {
+        view.setContentState(state);
+        TestHost.flush();
+    }
+}
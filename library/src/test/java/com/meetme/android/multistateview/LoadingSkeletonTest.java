@@ -0,0 +1,98 @@
+package com.meetme.android.multistateview;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The skeleton loading state is drawn without inflating anything, and all skeletons share one clock that only runs while one of them is showing
+ * in an attached window
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class LoadingSkeletonTest {
+    private TestHost mHost;
+
+    /**
+     * Skeletons left running by other tests in the same process, if any
+     */
+    private int mRunningBefore;
+
+    @Before
+    public void setUp() {
+        mHost = new TestHost();
+        TestHost.pauseMainLooper();
+        mRunningBefore = LoadingSkeleton.getRunningCount();
+    }
+
+    @Test
+    public void clockRunsWhileAnySkeletonIsShownAttached() {
+        final MultiStateView first = mHost.newAttachedView();
+        first.setLoadingSkeletonEnabled(true);
+        final MultiStateView second = mHost.newView();
+        second.setLoadingSkeletonEnabled(true);
+
+        // Not attached yet
+        show(second, MultiStateView.CONTENT_STATE_ID_LOADING);
+        assertRunning(0);
+
+        show(first, MultiStateView.CONTENT_STATE_ID_LOADING);
+        assertRunning(1);
+
+        mHost.attach(second);
+        assertRunning(2);
+
+        show(first, MultiStateView.CONTENT_STATE_ID_CONTENT);
+        assertRunning(1);
+
+        mHost.detach(second);
+        assertRunning(0);
+    }
+
+    @Test
+    public void togglingSkeletonWhileLoadingReappliesState() {
+        final MultiStateView view = mHost.newAttachedView();
+        show(view, MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        final View loading = view.getLoadingView();
+        assertEquals(View.VISIBLE, loading.getVisibility());
+
+        view.setLoadingSkeletonEnabled(true);
+
+        assertEquals(View.GONE, loading.getVisibility());
+        assertRunning(1);
+
+        view.setLoadingSkeletonEnabled(false);
+
+        assertEquals(View.VISIBLE, loading.getVisibility());
+        assertRunning(0);
+    }
+
+    @Test
+    public void noLoadingLayoutIsInflatedForSkeleton() {
+        final MultiStateView view = mHost.newAttachedView();
+        view.setLoadingSkeletonEnabled(true);
+
+        show(view, MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        // Just the content, hidden
+        assertEquals(1, view.getChildCount());
+        assertEquals(View.GONE, view.getContentView().getVisibility());
+        assertRunning(1);
+    }
+
+    private void assertRunning(int expected) {
+        assertEquals(mRunningBefore + expected, LoadingSkeleton.getRunningCount());
+    }
+
+    private static void show(MultiStateView view, int state) {
+        view.setContentState(state);
+        TestHost.flush();
+    }
+}
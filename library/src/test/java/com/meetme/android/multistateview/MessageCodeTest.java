@@ -0,0 +1,148 @@
+package com.meetme.android.multistateview;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * State ids are packed into the show/hide {@link android.os.Message#what} codes rather than boxed into {@link android.os.Message#obj}: state
+ * changes must not allocate, and pending messages must be cancelled for state ids outside the {@link Integer} cache, which boxed-identity
+ * comparison used to miss
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MessageCodeTest {
+    /**
+     * Outside the range of {@link Integer#valueOf(int)}'s cache
+     */
+    private static final int STATE_A = 1000;
+
+    private static final int STATE_B = 1001;
+
+    private static final int ITERATIONS = 2000;
+
+    private TestHost mHost;
+
+    private MultiStateView mView;
+
+    @Before
+    public void setUp() {
+        mHost = new TestHost();
+        mView = mHost.newAttachedView();
+        registerState(STATE_A);
+        registerState(STATE_B);
+        TestHost.flush();
+
+        // Otherwise every message is dispatched as soon as it's sent, and none is ever pending long enough to be cancelled
+        TestHost.pauseMainLooper();
+    }
+
+    private void registerState(int state) {
+        mView.registerStateViewProvider(state, new MultiStateView.StateViewProvider<TextView>() {
+            @Override
+            public TextView onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+                return new TextView(context);
+            }
+
+            @Override
+            public void onBeforeViewShown(int stateViewId, TextView view) {
+            }
+        });
+    }
+
+    @Test
+    public void pendingMessagesAreCancelledForUncachedStateIds() {
+        mView.setMetricsEnabled(true);
+
+        // Queues SHOW(A), then cancels it for SHOW(B), then cancels that and HIDE(A) for SHOW(A) again
+        mView.setContentState(STATE_A);
+        mView.setContentState(STATE_B);
+        mView.setContentState(STATE_A);
+
+        // Nothing has been shown yet
+        assertEquals(0, mView.getMetrics().getShownCount(STATE_A));
+
+        TestHost.flush();
+
+        assertEquals(STATE_A, mView.getContentState());
+        // Had any of those messages survived, B would have been shown in between, and A shown twice
+        assertEquals(0, mView.getMetrics().getShownCount(STATE_B));
+        assertEquals(1, mView.getMetrics().getShownCount(STATE_A));
+    }
+
+    @Test
+    public void setContentStateDoesNotAllocate() {
+        final com.sun.management.ThreadMXBean threads = getThreadMXBean();
+        Assume.assumeTrue(threads != null);
+
+        // Create both views, then warm up both loops
+        mView.setContentState(STATE_A);
+        mView.setContentState(STATE_B);
+        TestHost.flush();
+
+        final Handler handler = new Handler(Looper.getMainLooper());
+        toggleStates(ITERATIONS);
+        sendMessages(handler, ITERATIONS);
+        TestHost.flush();
+
+        // Robolectric's looper allocates for every message it schedules, so compare against the same message traffic without a MultiStateView
+        final long threadId = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(threadId);
+        sendMessages(handler, ITERATIONS);
+        final long baseline = threads.getThreadAllocatedBytes(threadId) - start;
+        TestHost.flush();
+
+        start = threads.getThreadAllocatedBytes(threadId);
+        toggleStates(ITERATIONS);
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - start;
+        TestHost.flush();
+
+        // Two boxed state ids per change would add 32 bytes per iteration
+        assertTrue("setContentState() allocated " + allocated + " bytes over " + ITERATIONS + " calls, vs. " + baseline + " for its messages alone",
+                allocated - baseline < ITERATIONS * 8);
+    }
+
+    private void toggleStates(int count) {
+        for (int i = 0; i < count; i++) {
+            mView.setContentState(i % 2 == 0 ? STATE_A : STATE_B);
+        }
+    }
+
+    /**
+     * Mirrors the Handler traffic of {@link #toggleStates(int)}: two cancellations and two messages per state change
+     */
+    private static void sendMessages(Handler handler, int count) {
+        for (int i = 0; i < count; i++) {
+            final int previous = i % 2 == 0 ? STATE_B : STATE_A;
+            final int next = i % 2 == 0 ? STATE_A : STATE_B;
+
+            handler.removeMessages(next << 1);
+            handler.removeMessages((previous << 1) | 1);
+            handler.sendEmptyMessage(previous << 1);
+            handler.sendEmptyMessage((next << 1) | 1);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+    }
+}
@@ -0,0 +1,268 @@
+package com.meetme.android.multistateview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Positions, view types and change notifications of {@link MultiStateAdapter} around the items of the adapter it wraps
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MultiStateAdapterTest {
+    private static final int ITEM_VIEW_TYPE = 7;
+
+    private TestHost mHost;
+
+    private ItemsAdapter mItems;
+
+    private MultiStateAdapter<RecyclerView.ViewHolder> mAdapter;
+
+    private RecyclerView mRecyclerView;
+
+    private final RecordingObserver mObserver = new RecordingObserver();
+
+    @Before
+    public void setUp() {
+        mHost = new TestHost();
+        mItems = new ItemsAdapter(3);
+        mAdapter = new MultiStateAdapter<RecyclerView.ViewHolder>(mItems);
+        mAdapter.registerAdapterDataObserver(mObserver);
+
+        mRecyclerView = new RecyclerView(mHost.getContext());
+        mAdapter.onAttachedToRecyclerView(mRecyclerView);
+    }
+
+    @Test
+    public void countsAndTypesOfContentItemsAndFooter() {
+        assertEquals(3, mAdapter.getItemCount());
+        assertEquals(ITEM_VIEW_TYPE, mAdapter.getItemViewType(2));
+        assertFalse(mAdapter.isStateRow(2));
+
+        mAdapter.setFooterState(MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        assertEquals(4, mAdapter.getItemCount());
+        assertEquals(ITEM_VIEW_TYPE, mAdapter.getItemViewType(2));
+        assertTrue(mAdapter.getItemViewType(3) < 0);
+        assertTrue(mAdapter.isStateRow(3));
+    }
+
+    @Test
+    public void countsAndTypesOfStateRow() {
+        mAdapter.setFooterState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        final int footerType = mAdapter.getItemViewType(3);
+
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        // The footer only comes with the content
+        assertEquals(1, mAdapter.getItemCount());
+        assertTrue(mAdapter.isStateRow(0));
+
+        final int loadingType = mAdapter.getItemViewType(0);
+        assertTrue(loadingType < 0);
+        // Full-list and footer rows of the same state have different layouts
+        assertTrue(loadingType != footerType);
+
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+
+        assertTrue(mAdapter.getItemViewType(0) < 0);
+        assertTrue(mAdapter.getItemViewType(0) != loadingType);
+    }
+
+    @Test
+    public void contentToStateAndBackReplacesAllRows() {
+        mAdapter.setFooterState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        mObserver.events.clear();
+
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        mObserver.assertEvents("removed 0 4", "inserted 0 1", "removed 0 1", "inserted 0 4");
+    }
+
+    @Test
+    public void stateToStateChangesSingleRow() {
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        mObserver.events.clear();
+
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        // Same state again
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+
+        mObserver.assertEvents("changed 0 1");
+    }
+
+    @Test
+    public void footerIsAddedChangedAndRemovedAfterItems() {
+        mAdapter.setFooterState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        mAdapter.setFooterState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        mAdapter.setFooterState(MultiStateAdapter.FOOTER_STATE_NONE);
+
+        mObserver.assertEvents("inserted 3 1", "changed 3 1", "removed 3 1");
+    }
+
+    @Test
+    public void footerChangesAreSilentWhileStateIsShown() {
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL);
+        mObserver.events.clear();
+
+        mAdapter.setFooterState(MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        mObserver.assertEvents();
+        assertEquals(1, mAdapter.getItemCount());
+
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        // Comes back with the footer
+        mObserver.assertEvents("removed 0 1", "inserted 0 4");
+    }
+
+    @Test
+    public void wrappedChangesAreForwardedWhileContentIsShown() {
+        mAdapter.setFooterState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        mObserver.events.clear();
+
+        mItems.count = 5;
+        mItems.notifyItemRangeInserted(1, 2);
+        mItems.notifyItemChanged(4, "payload");
+        mItems.notifyItemMoved(0, 3);
+        mItems.count = 4;
+        mItems.notifyItemRemoved(2);
+        mItems.notifyDataSetChanged();
+
+        mObserver.assertEvents("inserted 1 2", "changed 4 1 payload", "moved 0 3 1", "removed 2 1", "changed");
+        // The footer follows the items
+        assertEquals(5, mAdapter.getItemCount());
+        assertTrue(mAdapter.isStateRow(4));
+    }
+
+    @Test
+    public void wrappedChangesAreDroppedWhileStateIsShown() {
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        mObserver.events.clear();
+
+        mItems.count = 4;
+        mItems.notifyItemInserted(3);
+        mItems.notifyItemChanged(0);
+
+        mObserver.assertEvents();
+        assertEquals(1, mAdapter.getItemCount());
+
+        mAdapter.setContentState(MultiStateView.CONTENT_STATE_ID_CONTENT);
+
+        mObserver.assertEvents("removed 0 1", "inserted 0 4");
+    }
+
+    @Test
+    public void wrappedAdapterIsOnlyObservedWhileAttached() {
+        final MultiStateAdapter<RecyclerView.ViewHolder> adapter = new MultiStateAdapter<RecyclerView.ViewHolder>(new ItemsAdapter(1));
+        final RecyclerView.Adapter<RecyclerView.ViewHolder> items = adapter.getWrappedAdapter();
+        final RecyclerView other = new RecyclerView(mHost.getContext());
+
+        assertFalse(items.hasObservers());
+
+        adapter.onAttachedToRecyclerView(mRecyclerView);
+        adapter.onAttachedToRecyclerView(other);
+        assertTrue(items.hasObservers());
+
+        adapter.onDetachedFromRecyclerView(mRecyclerView);
+        assertTrue(items.hasObservers());
+
+        // Otherwise the wrapped adapter would keep this one alive for as long as it lives
+        adapter.onDetachedFromRecyclerView(other);
+        assertFalse(items.hasObservers());
+    }
+
+    @Test
+    public void wrappedChangesAreNotForwardedOnceDetached() {
+        mAdapter.onDetachedFromRecyclerView(mRecyclerView);
+
+        mItems.count = 4;
+        mItems.notifyItemInserted(3);
+
+        mObserver.assertEvents();
+    }
+
+    private static class ItemsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        int count;
+
+        ItemsAdapter(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return ITEM_VIEW_TYPE;
+        }
+
+        @Override
+        public int getItemCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Records every notification as a string, e.g. "inserted 3 1" for one item inserted at position 3
+     */
+    private static class RecordingObserver extends RecyclerView.AdapterDataObserver {
+        final ArrayList<String> events = new ArrayList<String>();
+
+        void assertEvents(String... expected) {
+            assertEquals(Arrays.asList(expected), events);
+            events.clear();
+        }
+
+        @Override
+        public void onChanged() {
+            events.add("changed");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            onItemRangeChanged(positionStart, itemCount, null);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            events.add("changed " + positionStart + " " + itemCount + (payload != null ? " " + payload : ""));
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            events.add("inserted " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            events.add("removed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            events.add("moved " + fromPosition + " " + toPosition + " " + itemCount);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.meetme.android.multistateview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Stress test of {@link MultiStateView#postContentState(int)} from many producer threads at once: the last state posted must be the one applied,
+ * and however many states are posted before the UI thread gets to them, only one apply runnable may be queued
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PostContentStateTest {
+    private static final int ROUNDS = 50;
+
+    private static final int PRODUCERS = 8;
+
+    private static final int POSTS_PER_PRODUCER = 1000;
+
+    private MultiStateView mView;
+
+    private Scheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mView = new TestHost().newAttachedView();
+        TestHost.flush();
+
+        // Queue everything posted to the main looper until flushed, rather than running it on the posting thread
+        mScheduler = Robolectric.getForegroundThreadScheduler();
+        mScheduler.pause();
+    }
+
+    @Test
+    public void latestStateWinsWithOneQueuedRunnable() throws InterruptedException {
+        for (int round = 0; round < ROUNDS; round++) {
+            final int queuedBefore = mScheduler.size();
+
+            runProducers(round);
+
+            // Posted strictly after every producer has finished, so it's the latest state
+            final int finalState = TestHost.ALL_STATES[round % TestHost.ALL_STATES.length];
+            runOnNewThread(new Runnable() {
+                @Override
+                public void run() {
+                    mView.postContentState(finalState);
+                }
+            });
+
+            assertEquals("runnables queued in round " + round, 1, mScheduler.size() - queuedBefore);
+
+            TestHost.flush();
+
+            assertEquals("state applied in round " + round, finalState, mView.getContentState());
+        }
+    }
+
+    private void runProducers(final int round) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] producers = new Thread[PRODUCERS];
+
+        for (int i = 0; i < PRODUCERS; i++) {
+            final int producer = i;
+
+            producers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int post = 0; post < POSTS_PER_PRODUCER; post++) {
+                        mView.postContentState(TestHost.ALL_STATES[(round + producer + post) % TestHost.ALL_STATES.length]);
+                    }
+                }
+            });
+            producers[i].start();
+        }
+
+        // Release them all at once, for as much contention as possible
+        start.countDown();
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+
+    private static void runOnNewThread(Runnable runnable) throws InterruptedException {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+}
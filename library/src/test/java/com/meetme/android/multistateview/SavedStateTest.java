@@ -0,0 +1,101 @@
+package com.meetme.android.multistateview;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import android.view.AbsSavedState;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The saved state always holds the content state, but only the other fields that differ from the XML defaults
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SavedStateTest {
+    /**
+     * The content state and the changed-fields bitmask
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private TestHost mHost;
+
+    @Before
+    public void setUp() {
+        mHost = new TestHost();
+    }
+
+    @Test
+    public void defaultStateIsRestoredOverStateSetBeforeRestore() {
+        final MultiStateView source = mHost.newAttachedView();
+        final SparseArray<Parcelable> container = new SparseArray<Parcelable>();
+        source.saveHierarchyState(container);
+
+        // E.g. set by onCreate() before the framework restores the hierarchy
+        final MultiStateView target = mHost.newAttachedView();
+        target.setContentState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        target.restoreHierarchyState(container);
+
+        assertEquals(MultiStateView.CONTENT_STATE_ID_CONTENT, target.getContentState());
+    }
+
+    @Test
+    public void unchangedFieldsAreNotParceled() {
+        final MultiStateView view = mHost.newAttachedView();
+        view.setContentState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        TestHost.flush();
+
+        assertEquals(getBaseSize() + HEADER_SIZE, getParcelSize(saveState(view)));
+    }
+
+    @Test
+    public void changedFieldsAreParceledAndRestored() {
+        final MultiStateView view = mHost.newAttachedView();
+        view.setLoadingLayoutResourceId(android.R.layout.simple_list_item_1);
+        final Parcelable state = saveState(view);
+
+        // One more int
+        assertEquals(getBaseSize() + HEADER_SIZE + 4, getParcelSize(state));
+
+        Parcel parcel = Parcel.obtain();
+        parcel.writeParcelable(state, 0);
+        parcel.setDataPosition(0);
+        final Parcelable restored = parcel.readParcelable(MultiStateView.SavedState.class.getClassLoader());
+        parcel.recycle();
+
+        final MultiStateView target = mHost.newView();
+        final SparseArray<Parcelable> container = new SparseArray<Parcelable>();
+        container.put(TestHost.VIEW_ID, restored);
+        target.restoreHierarchyState(container);
+
+        assertEquals(android.R.layout.simple_list_item_1, target.getLoadingLayoutResourceId());
+    }
+
+    private static Parcelable saveState(MultiStateView view) {
+        final SparseArray<Parcelable> container = new SparseArray<Parcelable>();
+        view.saveHierarchyState(container);
+        return container.get(TestHost.VIEW_ID);
+    }
+
+    /**
+     * @return the parceled size of a saved state holding nothing but the (empty) super state
+     */
+    private static int getBaseSize() {
+        return getParcelSize(new View.BaseSavedState(AbsSavedState.EMPTY_STATE));
+    }
+
+    private static int getParcelSize(Parcelable state) {
+        Parcel parcel = Parcel.obtain();
+        state.writeToParcel(parcel, 0);
+        final int size = parcel.dataSize();
+        parcel.recycle();
+        return size;
+    }
+}
@@ -0,0 +1,128 @@
+package com.meetme.android.multistateview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A view bound to a {@link StateSource} follows its distinct states, debounced if asked to, and only while attached
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class StateSourceTest {
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    private TestHost mHost;
+
+    private MultiStateView mView;
+
+    private final MutableStateSource mSource = new MutableStateSource();
+
+    @Before
+    public void setUp() {
+        mHost = new TestHost();
+        mView = mHost.newAttachedView();
+        mView.setMetricsEnabled(true);
+        TestHost.flush();
+
+        TestHost.pauseMainLooper();
+    }
+
+    @Test
+    public void repeatedStateIsDropped() {
+        mView.bindStateSource(mSource);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        assertEquals(MultiStateView.CONTENT_STATE_ID_LOADING, mView.getContentState());
+
+        // Changed by the app, behind the source's back
+        mView.setContentState(MultiStateView.CONTENT_STATE_ID_CONTENT);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        assertEquals(MultiStateView.CONTENT_STATE_ID_CONTENT, mView.getContentState());
+    }
+
+    @Test
+    public void repeatedStateDoesNotRestartDebounce() {
+        mView.bindStateSource(mSource, DEBOUNCE_MILLIS);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        advanceBy(DEBOUNCE_MILLIS - 10);
+
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        advanceBy(10);
+
+        assertEquals(MultiStateView.CONTENT_STATE_ID_LOADING, mView.getContentState());
+    }
+
+    @Test
+    public void debounceAppliesOnlyTheLastOfABurst() {
+        mView.bindStateSource(mSource, DEBOUNCE_MILLIS);
+
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        advanceBy(DEBOUNCE_MILLIS / 2);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        advanceBy(DEBOUNCE_MILLIS / 2);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL);
+        advanceBy(DEBOUNCE_MILLIS - 1);
+
+        // Still waiting for the source to settle
+        assertEquals(MultiStateView.CONTENT_STATE_ID_CONTENT, mView.getContentState());
+
+        advanceBy(1);
+
+        assertEquals(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL, mView.getContentState());
+        assertEquals(0, mView.getMetrics().getShownCount(MultiStateView.CONTENT_STATE_ID_LOADING));
+        assertEquals(0, mView.getMetrics().getShownCount(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK));
+        assertEquals(1, mView.getMetrics().getShownCount(MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL));
+    }
+
+    @Test
+    public void nothingIsDeliveredWhileDetached() {
+        mView.bindStateSource(mSource, DEBOUNCE_MILLIS);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        // Detached while a state is being debounced
+        mHost.detach(mView);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        advanceBy(DEBOUNCE_MILLIS);
+
+        assertEquals(MultiStateView.CONTENT_STATE_ID_CONTENT, mView.getContentState());
+    }
+
+    @Test
+    public void bindingWhileDetachedWaitsForAttach() {
+        mHost.detach(mView);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+
+        mView.bindStateSource(mSource);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+
+        assertEquals(MultiStateView.CONTENT_STATE_ID_CONTENT, mView.getContentState());
+    }
+
+    @Test
+    public void onlyLatestStateIsAppliedOnReattach() {
+        mView.bindStateSource(mSource, DEBOUNCE_MILLIS);
+        mHost.detach(mView);
+
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_LOADING);
+        mSource.setState(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK);
+        mHost.attach(mView);
+
+        // Right away, without waiting for the debounce window
+        assertEquals(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK, mView.getContentState());
+
+        TestHost.flush();
+
+        assertEquals(0, mView.getMetrics().getShownCount(MultiStateView.CONTENT_STATE_ID_LOADING));
+        assertEquals(1, mView.getMetrics().getShownCount(MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK));
+    }
+
+    private static void advanceBy(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis);
+    }
+}
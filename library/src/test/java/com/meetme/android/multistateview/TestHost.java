@@ -0,0 +1,128 @@
+package com.meetme.android.multistateview;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.robolectric.Robolectric;
+
+/**
+ * Creates MultiStateViews attached to a Robolectric-hosted activity window
+ */
+final class TestHost {
+    /**
+     * Needed for hierarchy state to be saved
+     */
+    static final int VIEW_ID = 1;
+
+    static final int CUSTOM_STATE = MultiStateView.MIN_CONTENT_STATE_ID;
+
+    static final int[] ALL_STATES = {
+            MultiStateView.CONTENT_STATE_ID_CONTENT,
+            MultiStateView.CONTENT_STATE_ID_LOADING,
+            MultiStateView.CONTENT_STATE_ID_ERROR_NETWORK,
+            MultiStateView.CONTENT_STATE_ID_ERROR_GENERAL,
+            CUSTOM_STATE,
+    };
+
+    private final Activity mActivity;
+
+    private final ViewGroup mRoot;
+
+    TestHost() {
+        mActivity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+        mRoot = new FrameLayout(mActivity);
+        mActivity.setContentView(mRoot);
+    }
+
+    Context getContext() {
+        return mActivity;
+    }
+
+    /**
+     * @return a new MultiStateView with a content child and {@link #CUSTOM_STATE} registered, not yet attached
+     */
+    MultiStateView newView() {
+        MultiStateView view = new MultiStateView(mActivity);
+        view.setId(VIEW_ID);
+        view.addView(new View(mActivity), new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        view.registerStateViewProvider(CUSTOM_STATE, new TextViewProvider());
+
+        return view;
+    }
+
+    /**
+     * @return a new MultiStateView (see {@link #newView()}), attached to the window
+     */
+    MultiStateView newAttachedView() {
+        MultiStateView view = newView();
+        attach(view);
+        return view;
+    }
+
+    /**
+     * Attaches the given view to the window, along with any view attached before
+     *
+     * @param view
+     */
+    void attach(View view) {
+        mRoot.addView(view);
+    }
+
+    void detach(View view) {
+        mRoot.removeView(view);
+    }
+
+    /**
+     * Runs the show/hide messages posted by state changes
+     */
+    static void flush() {
+        Robolectric.flushForegroundThreadScheduler();
+    }
+
+    /**
+     * Queues everything posted to the main looper until {@link #flush()}, rather than running it right away on the posting thread
+     */
+    static void pauseMainLooper() {
+        Robolectric.getForegroundThreadScheduler().pause();
+    }
+
+    /**
+     * Measures and lays out the given view at the given exact size
+     *
+     * @param view
+     * @param width
+     * @param height
+     */
+    static void layout(View view, int width, int height) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+    }
+
+    /**
+     * Creates plain TextViews, counting how many it created
+     */
+    static class TextViewProvider implements MultiStateView.StateViewProvider<TextView> {
+        int created;
+
+        /**
+         * The view created last
+         */
+        TextView view;
+
+        @Override
+        public TextView onCreateStateView(Context context, ViewGroup container, int stateViewId) {
+            created++;
+            view = new TextView(context);
+            return view;
+        }
+
+        @Override
+        public void onBeforeViewShown(int stateViewId, TextView view) {
+        }
+    }
+}